@@ -0,0 +1,102 @@
+package tablut;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks of the evaluation and the search of AI over the
+ *  corpus of BoardBenchmark.  Each search starts from an empty
+ *  transposition table, cleared outside the measured time, so that its
+ *  time does not depend on the searches before it.
+ *  @author ANUJS
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AIBenchmark {
+
+    /** The state of the searches, which alone depend on a depth. */
+    @State(Scope.Thread)
+    public static class Searcher {
+
+        /** Depth of the searches of search. */
+        @Param({ "3", "5" })
+        public int depth;
+
+        /** Read the corpus and set up the player. */
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            _positions = BoardBenchmark.corpus().toArray(new Board[0]);
+            _player.setTimeLimit(Long.MAX_VALUE);
+            _player.setNodeLimit(0);
+            _player.setDepthLimit(depth);
+        }
+
+        /** Empty the player's transposition table before a search. */
+        @Setup(Level.Invocation)
+        public void clearTable() {
+            _player.table().clear();
+        }
+
+        /** Search the next position of the corpus to depth. */
+        Move search() {
+            _next = _next + 1 == _positions.length ? 0 : _next + 1;
+            return _player.search(_positions[_next]);
+        }
+
+        /** The corpus. */
+        private Board[] _positions;
+        /** Index of the last position searched. */
+        private int _next;
+        /** The player under test. */
+        private final AI _player = new AI();
+    }
+
+    /** Read the corpus. */
+    @Setup
+    public void setup() throws IOException {
+        _positions = BoardBenchmark.corpus().toArray(new Board[0]);
+    }
+
+    /** Evaluate a position statically. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int staticScore() {
+        return _player.staticScore(nextPosition());
+    }
+
+    /** Search a position to depth with SEARCHER. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Move search(Searcher searcher) {
+        return searcher.search();
+    }
+
+    /** Return the next position of the corpus. */
+    private Board nextPosition() {
+        _next = _next + 1 == _positions.length ? 0 : _next + 1;
+        return _positions[_next];
+    }
+
+    /** The corpus. */
+    private Board[] _positions;
+    /** Index of the last position returned by nextPosition. */
+    private int _next;
+    /** The player whose evaluation is measured, which needs only a
+     *  token transposition table. */
+    private final AI _player = new AI(new TranspositionTable(1));
+}
@@ -0,0 +1,162 @@
+package tablut;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks of the Board and Move operations that the search
+ *  performs at every node.  Each invocation works on the next position
+ *  (or the next move of the next position) of the corpus in turn, so
+ *  that the results reflect a realistic mix rather than one position
+ *  the branch predictors have learned.  Board.checkRepeated, which is
+ *  private, is measured as part of makeMove.
+ *  @author ANUJS
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    /** Return the corpus of mid-game positions: those of the standard
+     *  suite (see Suite) and every position one legal move from
+     *  them. */
+    static List<Board> corpus() throws IOException {
+        Suite suite = Suite.standard();
+        List<Board> result = new ArrayList<>();
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int k = 0; k < suite.size(); k += 1) {
+            Board position = suite.position(k);
+            result.add(new Board(position));
+            int n = position.legalMoves(position.turn(), moves);
+            for (int i = 0; i < n; i += 1) {
+                Board next = new Board(position);
+                next.makeMove(moves[i]);
+                if (next.winner() == null) {
+                    next.clearUndo();
+                    result.add(next);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Read the corpus and list the legal moves of each of its
+     *  positions. */
+    @Setup
+    public void setup() throws IOException {
+        _positions = corpus().toArray(new Board[0]);
+        List<Integer> owners = new ArrayList<>();
+        List<Integer> moves = new ArrayList<>();
+        for (int p = 0; p < _positions.length; p += 1) {
+            Board position = _positions[p];
+            int n = position.legalMoves(position.turn(), _buffer);
+            for (int i = 0; i < n; i += 1) {
+                owners.add(p);
+                moves.add(_buffer[i]);
+            }
+        }
+        _owners = new int[moves.size()];
+        _moves = new int[moves.size()];
+        _moveNames = new String[moves.size()];
+        for (int i = 0; i < _moves.length; i += 1) {
+            _owners[i] = owners.get(i);
+            _moves[i] = moves.get(i);
+            _moveNames[i] = Move.mv(_moves[i]).toString();
+        }
+    }
+
+    /** Generate the legal moves of a position. */
+    @Benchmark
+    public int legalMoves() {
+        Board position = nextPosition();
+        return position.legalMoves(position.turn(), _buffer);
+    }
+
+    /** Make a legal move and take it back with unmakeMove. */
+    @Benchmark
+    public long makeMove() {
+        int i = nextMove();
+        Board position = _positions[_owners[i]];
+        position.makeMove(_moves[i]);
+        long hash = position.hash();
+        position.unmakeMove();
+        return hash;
+    }
+
+    /** Check and make a legal move and take it back with undo, as the
+     *  game does. */
+    @Benchmark
+    public long makeMoveAndUndo() {
+        int i = nextMove();
+        Board position = _positions[_owners[i]];
+        position.makeMove(Move.mv(_moves[i]));
+        long hash = position.hash();
+        position.undo();
+        return hash;
+    }
+
+    /** Copy a position into a scratch board. */
+    @Benchmark
+    public long copy() {
+        _scratch.copy(nextPosition());
+        return _scratch.hash();
+    }
+
+    /** Encode a position as a string. */
+    @Benchmark
+    public String encodedBoard() {
+        return nextPosition().encodedBoard();
+    }
+
+    /** Parse a move in the notation of the game. */
+    @Benchmark
+    public Move parseMove() {
+        return Move.mv(_moveNames[nextMove()]);
+    }
+
+    /** Return the next position of the corpus. */
+    private Board nextPosition() {
+        _nextPosition = _nextPosition + 1 == _positions.length
+            ? 0 : _nextPosition + 1;
+        return _positions[_nextPosition];
+    }
+
+    /** Return the index of the next move in _moves. */
+    private int nextMove() {
+        _nextMove = _nextMove + 1 == _moves.length ? 0 : _nextMove + 1;
+        return _nextMove;
+    }
+
+    /** The corpus. */
+    private Board[] _positions;
+    /** The legal moves of all positions of the corpus, packed, each
+     *  of them from position _owners[i]. */
+    private int[] _moves;
+    /** See _moves. */
+    private int[] _owners;
+    /** The moves of _moves in the notation of the game. */
+    private String[] _moveNames;
+    /** Index of the last position returned by nextPosition. */
+    private int _nextPosition;
+    /** Index of the last move returned by nextMove. */
+    private int _nextMove;
+    /** Buffer for generated moves. */
+    private final int[] _buffer = new int[Board.MAX_MOVES];
+    /** Target of copy. */
+    private final Board _scratch = new Board();
+}
@@ -1,10 +1,20 @@
 package tablut;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 
 import static java.lang.Math.*;
 
-import static tablut.Square.sq;
 import static tablut.Piece.*;
 
 /** A Player that automatically generates moves.
@@ -18,29 +28,281 @@ class AI extends Player {
     /** A position-score magnitude indicating a forced win in a subsequent
      *  move.  This differs from WINNING_VALUE to avoid putting off wins. */
     private static final int WILL_WIN_VALUE = Integer.MAX_VALUE - 40;
+    /** A position-score magnitude indicating a win found in the
+     *  tablebase, less the number of plies it takes. */
+    private static final int TABLEBASE_VALUE = WILL_WIN_VALUE - 1;
     /** A magnitude greater than a normal value. */
     private static final int INFTY = Integer.MAX_VALUE;
 
+    /** Default time budget per move, in milliseconds. */
+    static final int DEFAULT_TIME_LIMIT = 1000;
+
     /** A new AI with no piece or controller (intended to produce
-     *  a template). */
+     *  a template), using the default settings. */
     AI() {
-        this(null, null);
+        this(new TranspositionTable(TranspositionTable.DEFAULT_MEGABYTES));
     }
 
-    /** A new AI playing PIECE under control of CONTROLLER. */
-    AI(Piece piece, Controller controller) {
+    /** A new AI with no piece or controller (intended to produce
+     *  a template), using the default settings except that its
+     *  transposition table is TABLE. */
+    AI(TranspositionTable table) {
+        super(null, null);
+        _table = table;
+        _timeLimit = DEFAULT_TIME_LIMIT;
+    }
+
+    /** A new AI playing PIECE under control of CONTROLLER, with the
+     *  settings of TEMPLATE, whose transposition table it shares. */
+    private AI(AI template, Piece piece, Controller controller) {
         super(piece, controller);
+        _table = template._table;
+        _timeLimit = template._timeLimit;
+        _nodeLimit = template._nodeLimit;
+        _depthLimit = template._depthLimit;
+        _threads = template._threads;
+        _workers = template._workers;
+        _reproducible = template._reproducible;
+        _reductions = template._reductions;
+        _tablebase = template._tablebase;
+        _book = template._book;
+        _ponder = template._ponder;
+        _reportStats = template._reportStats;
     }
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        return new AI(this, piece, controller);
+    }
+
+    /** Give me (and the players I create) a new transposition table of
+     *  MEGABYTES megabytes. */
+    void setHashSize(int megabytes) {
+        _table = new TranspositionTable(megabytes);
+    }
+
+    /** Limit each move's search to about MILLIS milliseconds. */
+    void setTimeLimit(long millis) {
+        _timeLimit = millis;
+    }
+
+    /** Limit each move's search to about NODES positions, or remove the
+     *  limit if NODES is 0. */
+    void setNodeLimit(long nodes) {
+        _nodeLimit = nodes;
+    }
+
+    /** Limit each move's search to DEPTH plies (not counting quiescence
+     *  search). */
+    void setDepthLimit(int depth) {
+        _depthLimit = min(max(depth, 1), MAX_DEPTH);
+    }
+
+    /** Search with THREADS threads.  All but one are helpers that search
+     *  the same root, each skipping its own pattern of depths (see
+     *  SKIP_SIZE), communicating only through the shared transposition
+     *  table.  The time and depth limits apply to
+     *  the main thread, whose result is the one used; the node limit
+     *  counts only the main thread's nodes. */
+    void setThreads(int threads) {
+        _threads = max(threads, 1);
+    }
+
+    /** Use REDUCTIONS for null move pruning and late move reductions. */
+    void setReductions(Reductions reductions) {
+        _reductions = reductions;
+    }
+
+    /** Use TABLEBASE, if not null, to play and to score positions with
+     *  few pieces. */
+    void setTablebase(Tablebase tablebase) {
+        _tablebase = tablebase;
+    }
+
+    /** Use BOOK, if not null, to play the opening. */
+    void setBook(Book book) {
+        _book = book;
+    }
+
+    /** If PONDER, think on my opponent's time when it is a manual player:
+     *  after each of my moves, search the position after the reply
+     *  predicted by my principal variation until my opponent moves.  If
+     *  it plays the predicted move, that search continues as my next one,
+     *  with my time limit counted from then; otherwise it is abandoned,
+     *  leaving its results in the transposition table.  A pondering
+     *  search stops by itself after PONDER_NODES positions, and
+     *  stopPondering stops it at once. */
+    void setPonder(boolean ponder) {
+        _ponder = ponder;
+    }
+
+    /** If REPORTSTATS, report the statistics of each completed iteration
+     *  of my searches as a note to my controller (see SearchStats). */
+    void setReportStats(boolean reportStats) {
+        _reportStats = reportStats;
+    }
+
+    /** If WORKERS is positive, search reproducibly: without the
+     *  transposition table, move-ordering statistics, or window-dependent
+     *  pruning, so that a search to a given depth yields the same move
+     *  however it is carried out.  If WORKERS is more than 1, split the
+     *  search among that many fork/join worker threads (see Split); the
+     *  result is the same as with 1 worker.  If WORKERS is 0, search
+     *  normally.  Reproducible searches take precedence over setThreads.
+     *  The node limit does not apply to split searches. */
+    void setWorkers(int workers) {
+        _workers = max(workers, 0);
+        _reproducible = _workers > 0;
     }
 
     @Override
     String myMove() {
-        String s = findMove().toString();
-        return s;
+        Move move = _pondering == null ? search(board())
+            : finishPondering(board());
+        _controller.logComment("depth %d, score %d, pv %s", _depthReached,
+                               _score, principalVariation());
+        _controller.logComment("hash: %d entries, %.1f%% hits, %.1f%% full",
+                               _table.size(), 100.0 * _stats.hitRate(),
+                               100.0 * _table.fill());
+        if (_ponder) {
+            startPondering(board());
+        }
+        return move.toString();
+    }
+
+    /** If my opponent is a manual player and my principal variation
+     *  predicts its reply to my move on POSITION, which is about to be
+     *  made, start searching the position after that reply in the
+     *  background. */
+    private void startPondering(Board position) {
+        Piece opponent = _myPiece.opponent();
+        boolean manual = opponent == WHITE ? _controller.manualWhite()
+            : _controller.manualBlack();
+        if (!manual || _bestLine.length < 2) {
+            return;
+        }
+        Board predicted = new Board(position);
+        for (int k = 0; k < 2; k += 1) {
+            if (predicted.winner() != null
+                || !predicted.isLegal(_bestLine[k])) {
+                return;
+            }
+            predicted.makeMove(_bestLine[k]);
+        }
+        if (predicted.winner() != null) {
+            return;
+        }
+        if (_ponderer == null) {
+            _ponderer = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "tablut-ponder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        _ponderHash = predicted.hash();
+        _abandoned = false;
+        _ponderOn = true;
+        _pondering = _ponderer.submit(() -> search(predicted));
+    }
+
+    @Override
+    void stopPondering() {
+        if (_pondering == null) {
+            return;
+        }
+        _abandoned = true;
+        _ponderOn = false;
+        try {
+            _pondering.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } catch (CancellationException | ExecutionException excp) {
+            /* Nothing is left to stop. */
+        }
+        _pondering = null;
+        _abandoned = false;
+    }
+
+    /** Stop pondering and return my move on POSITION: the result of the
+     *  pondering search, continued within my time limit from now, if it
+     *  was searching POSITION, and otherwise that of a new search. */
+    private Move finishPondering(Board position) {
+        boolean hit = position.hash() == _ponderHash;
+        if (hit) {
+            _startTime = System.nanoTime();
+        } else {
+            _abandoned = true;
+        }
+        _ponderOn = false;
+        Move result = null;
+        try {
+            result = _pondering.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } catch (CancellationException excp) {
+            /* Search again below. */
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        }
+        _pondering = null;
+        _abandoned = false;
+        _controller.logComment("ponder %s", hit ? "hit" : "miss");
+        if (!hit || result == null) {
+            result = search(position);
+        }
+        return result;
+    }
+
+    /** Return my transposition table. */
+    TranspositionTable table() {
+        return _table;
+    }
+
+    /** Return the depth of the deepest iteration of my last search that
+     *  completed. */
+    int depthReached() {
+        return _depthReached;
+    }
+
+    /** Return the value found by the deepest completed iteration of my
+     *  last search. */
+    int score() {
+        return _score;
+    }
+
+    /** Return the principal variation found by the deepest completed
+     *  iteration of my last search, as moves separated by blanks.  Split
+     *  searches record only its first move. */
+    String principalVariation() {
+        StringBuilder result = new StringBuilder();
+        for (int move : _bestLine) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(Move.mv(move));
+        }
+        return result.toString();
+    }
+
+    /** Return the statistics of my last search, summed over all threads,
+     *  as of its last completed iteration. */
+    SearchStats stats() {
+        return _stats;
+    }
+
+    /** Return the number of positions visited by my last search, in all
+     *  threads. */
+    long nodes() {
+        long total = _nodes;
+        if (_helpers != null) {
+            for (AI helper : _helpers) {
+                total += helper._nodes;
+            }
+        }
+        for (AI worker : _splitters) {
+            total += worker._nodes;
+        }
+        return total;
     }
 
     @Override
@@ -48,121 +310,1011 @@ class AI extends Player {
         return false;
     }
 
-    /** Return a move for me from the current position, assuming there
-     *  is a move. */
-    private Move findMove() {
-        Board b = new Board(board());
+    /** Return a move for the side to move in POSITION, assuming there
+     *  is a move.  If my book has moves from POSITION, returns one of
+     *  them, chosen at random in proportion to their weights when I have
+     *  a controller and otherwise the heaviest.  If my tablebase knows
+     *  the value of POSITION, returns its best move.  Next looks for a
+     *  forced win by threats with a Solver, returning its first move if
+     *  it finds one and can reconstruct its line.  Otherwise, searches to
+     *  increasing depths until the time or node budget or the depth limit
+     *  runs out, and returns the best move of the deepest search that
+     *  completed.  The first iteration always completes.  POSITION is not
+     *  modified. */
+    Move search(Board position) {
+        Board b = new Board(position);
+        b.reserve(MAX_PLY);
+        int sense = b.turn() == WHITE ? 1 : -1;
+        Move best = null;
+        _table.newSearch();
+        _history.age();
+        _startTime = System.nanoTime();
+        _nodes = 0;
+        _aborted = _stop = false;
+        _depthReached = _score = 0;
+        _bestLine = new int[0];
+        _prevPVLength = 0;
+        _threadStats.clear();
+        _stats.clear();
+        for (AI worker : _splitters) {
+            worker._nodes = 0;
+            worker._threadStats.clear();
+        }
+        int bookWeight = _book == null ? 0 : _book.weight(b);
+        if (bookWeight > 0) {
+            int r = _controller == null ? 0 : _controller.randInt(bookWeight);
+            _bestLine = new int[] { _book.choose(b, r) };
+            return Move.mv(_bestLine[0]);
+        }
+        int tablebaseMove = _tablebase == null ? 0 : _tablebase.bestMove(b);
+        if (tablebaseMove != 0) {
+            _bestLine = new int[] { tablebaseMove };
+            _score = tablebaseScore(_tablebase.probe(b), sense);
+            return Move.mv(tablebaseMove);
+        }
+        if (_solver == null) {
+            _solver = new Solver(SOLVER_NODES);
+        }
+        if (_solver.solve(b) != null && _solver.line().length > 0) {
+            _bestLine = _solver.line();
+            _depthReached = _bestLine.length;
+            _score = sense * WILL_WIN_VALUE;
+            _nodes = _solver.nodes();
+            return Move.mv(_bestLine[0]);
+        }
+        Future<?>[] helping = startHelpers(position);
+        try {
+            for (int depth = 1; depth <= _depthLimit; depth += 1) {
+                _mayAbort = depth > 1;
+                SearchEvent event = null;
+                if (Events.enabled()) {
+                    event = new SearchEvent();
+                    event.begin();
+                }
+                long nodes = nodes();
+                int value = _workers > 1 ? split(b, depth, sense)
+                    : aspire(b, depth, sense, _score);
+                if (event != null) {
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.depth = depth;
+                        event.nodes = nodes() - nodes;
+                        event.score = _aborted ? 0 : value;
+                        event.completed = !_aborted;
+                        event.commit();
+                    }
+                }
+                if (_aborted) {
+                    break;
+                }
+                best = _lastFoundMove;
+                _depthReached = depth;
+                _score = value;
+                if (_bestLine.length == 0 && best != null) {
+                    _bestLine = new int[] { best.packed() };
+                }
+                _prevPVLength = _bestLine.length;
+                System.arraycopy(_bestLine, 0, _prevPV, 0, _prevPVLength);
+                endIteration(depth);
+                if (abs(value) >= WILL_WIN_VALUE
+                    || (!_ponderOn && 2 * elapsedMillis() >= _timeLimit)
+                    || (nodeBudget() > 0 && 2 * _nodes >= nodeBudget())) {
+                    break;
+                }
+            }
+        } finally {
+            stopHelpers(helping);
+        }
+        return best;
+    }
+
+    /** Sum the statistics of all my searching threads into _stats and
+     *  record the end of iteration DEPTH there, reporting it if I am to
+     *  report statistics and have a controller. */
+    private void endIteration(int depth) {
+        List<SearchStats> each = new ArrayList<>();
+        each.add(_threadStats);
+        if (_helpers != null && _threads > 1 && !_reproducible) {
+            for (AI helper : _helpers) {
+                each.add(helper._threadStats);
+            }
+        }
+        for (AI worker : _splitters) {
+            each.add(worker._threadStats);
+        }
+        _stats.collect(each);
+        _stats.endIteration(depth, nodes(), elapsedMillis());
+        if (_reportStats && _controller != null) {
+            _controller.reportNote("%s", _stats.iterationReport());
+        }
+    }
+
+    /** Search BOARD to DEPTH and return its value, recording the best
+     *  move in _lastFoundMove and the principal variation in _bestLine.
+     *  SENSE is as for findMove.  After the first iteration, the search
+     *  starts with a window of ASPIRATION_WINDOW either side of GUESS,
+     *  the previous iteration's value, and widens it on the failing side
+     *  by a factor of ASPIRATION_GROWTH each time the value falls outside
+     *  it, dropping that side's bound altogether once the window has grown
+     *  to INFTY or the value is a win (which guess + INFTY might still
+     *  not include).  Returns 0 with _aborted set if the search budget
+     *  runs out. */
+    private int aspire(Board board, int depth, int sense, int guess) {
+        int alpha = -INFTY, beta = INFTY, delta = ASPIRATION_WINDOW;
+        if (depth > 1 && abs(guess) < WILL_WIN_VALUE) {
+            alpha = guess - delta;
+            beta = guess + delta;
+        }
+        while (true) {
+            _followPV = true;
+            _lastFoundMove = null;
+            int value = findMove(board, depth, 0, sense, alpha, beta);
+            if (_aborted) {
+                return 0;
+            }
+            delta = (int) min((long) delta * ASPIRATION_GROWTH, INFTY);
+            if (abs(value) >= WILL_WIN_VALUE) {
+                delta = INFTY;
+            }
+            if (value <= alpha && alpha > -INFTY) {
+                alpha = delta == INFTY ? -INFTY
+                    : (int) max((long) guess - delta, -INFTY);
+            } else if (value >= beta && beta < INFTY) {
+                beta = delta == INFTY ? INFTY
+                    : (int) min((long) guess + delta, INFTY);
+            } else {
+                _bestLine = Arrays.copyOf(_pv[0], _pvLength[0]);
+                return value;
+            }
+        }
+    }
+
+    /** Start my helper threads searching POSITION, creating them if
+     *  needed, and return their pending results (null if I have no
+     *  helpers). */
+    private Future<?>[] startHelpers(Board position) {
+        if (_threads == 1 || _reproducible) {
+            return null;
+        }
+        if (_helpers == null || _helpers.length != _threads - 1) {
+            if (_pool != null) {
+                _pool.shutdownNow();
+            }
+            _pool = Executors.newFixedThreadPool(_threads - 1, r -> {
+                Thread thread = new Thread(r, "tablut-helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            _helpers = new AI[_threads - 1];
+            for (int i = 0; i < _helpers.length; i += 1) {
+                AI helper = new AI(this, _myPiece, _controller);
+                helper._timeLimit = Long.MAX_VALUE;
+                helper._nodeLimit = 0;
+                helper._threads = 1;
+                _helpers[i] = helper;
+            }
+        }
+        Future<?>[] helping = new Future<?>[_helpers.length];
+        for (int i = 0; i < _helpers.length; i += 1) {
+            AI helper = _helpers[i];
+            Board b = new Board(position);
+            b.reserve(MAX_PLY);
+            int pattern = i % SKIP_SIZE.length;
+            helper._stop = false;
+            helper._nodes = 0;
+            helper._threadStats.clear();
+            helping[i] = _pool.submit(() -> helper.help(b, pattern));
+        }
+        return helping;
+    }
+
+    /** Stop the helper searches whose pending results are HELPING (null
+     *  if none) and wait for them to finish. */
+    private void stopHelpers(Future<?>[] helping) {
+        if (helping == null) {
+            return;
+        }
+        for (AI helper : _helpers) {
+            helper._stop = true;
+        }
+        for (Future<?> result : helping) {
+            try {
+                result.get();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException excp) {
+                throw new IllegalStateException(excp.getCause());
+            }
+        }
+    }
+
+    /** As a helper thread, search BOARD to increasing depths until told
+     *  to stop, leaving the results in the shared transposition table.
+     *  I skip the depths given by skip pattern PATTERN, an index into
+     *  SKIP_SIZE and SKIP_PHASE.  My node count and statistics must
+     *  already have been cleared, so that the main thread never sees
+     *  those of an earlier search. */
+    private void help(Board board, int pattern) {
+        int sense = board.turn() == WHITE ? 1 : -1;
+        _history.age();
+        _aborted = false;
+        _mayAbort = true;
+        int size = SKIP_SIZE[pattern], phase = SKIP_PHASE[pattern];
+        for (int depth = 1; depth <= MAX_DEPTH && !_aborted; depth += 1) {
+            if ((depth + phase) / size % 2 == 0) {
+                findMove(board, depth, 0, sense, -INFTY, INFTY);
+            }
+        }
+    }
+
+    /** Search BOARD to DEPTH, splitting the work among my fork/join
+     *  workers, and return its value, recording the best move in
+     *  _lastFoundMove.  SENSE is as for findMove.  Sets _aborted if the
+     *  time budget runs out. */
+    private int split(Board board, int depth, int sense) {
+        if (_splitPool == null
+            || _splitPool.getParallelism() != _workers) {
+            if (_splitPool != null) {
+                _splitPool.shutdownNow();
+            }
+            _splitters.clear();
+            _splitPool = new ForkJoinPool(_workers, pool -> {
+                AI worker = new AI(this, _myPiece, _controller);
+                worker._timeLimit = Long.MAX_VALUE;
+                worker._nodeLimit = 0;
+                worker._mayAbort = true;
+                _splitters.add(worker);
+                return new Worker(pool, worker);
+            }, null, false);
+        }
+        Split root = new Split(this, board, depth, sense,
+                               _prevPVLength > 0 ? _prevPV[0] : 0);
         _lastFoundMove = null;
-        findMove(b, maxDepth(b), true, (b.turn() == WHITE ? 1 : -1),
-                -INFTY, INFTY);
-        return _lastFoundMove;
+        int value = _splitPool.invoke(root);
+        if (root.cancelled()) {
+            _aborted = true;
+        } else {
+            _lastFoundMove = Move.mv(root._bestMove);
+            _bestLine = new int[] { root._bestMove };
+        }
+        return value;
+    }
+
+    /** Search the node of TASK as a fork/join worker, and return its
+     *  value, recording its best move in TASK.  Near the leaves, this is
+     *  an ordinary findMove.  Otherwise, in Young Brothers Wait fashion,
+     *  the first move is searched here and the rest as parallel subtasks.
+     *  Below the root, each subtask narrows its window by the best value
+     *  its siblings have found when it starts.  Values found with such
+     *  windows depend on timing only where they are bounds rather than
+     *  exact.  At the root, every subtask uses the window left by the
+     *  first move, so those with greater values than the first get exact
+     *  values.  The move chosen, the first in order of the best value, is
+     *  thus the one the serial search chooses. */
+    private int split(Split task) {
+        Board board = task._board;
+        int depth = task._depth, ply = task._ply, sense = task._sense;
+        int alpha = task._alpha, beta = task._beta;
+        if (depth < MIN_SPLIT_DEPTH || board.winner() != null) {
+            _task = task;
+            _aborted = false;
+            _prevPV[0] = task._hint;
+            _prevPVLength = task._hint == 0 ? 0 : 1;
+            _followPV = true;
+            _lastFoundMove = null;
+            int value = findMove(board, depth, ply, sense, alpha, beta);
+            _task = null;
+            if (_lastFoundMove != null) {
+                task._bestMove = _lastFoundMove.packed();
+            }
+            return value;
+        }
+        MovePicker picker = _pickers[ply];
+        picker.init(board, task._hint, ply);
+        int[] moves = new int[Board.MAX_MOVES];
+        int n;
+        for (n = 0; (moves[n] = picker.next()) != 0; n += 1) {
+            continue;
+        }
+        if (n == 0) {
+            return staticScore(board);
+        }
+        board.makeMove(moves[0]);
+        int bestSoFar =
+            split(new Split(task, 0, board, depth - 1, alpha, beta));
+        board.unmakeMove();
+        task._bestMove = moves[0];
+        if (sense == 1) {
+            alpha = max(alpha, bestSoFar);
+        } else {
+            beta = min(beta, bestSoFar);
+        }
+        if (beta <= alpha || n == 1 || task.cancelled()) {
+            return bestSoFar;
+        }
+        task._best = bestSoFar;
+        Split[] rest = new Split[n];
+        for (int i = 1; i < n; i += 1) {
+            Board b = new Board(board);
+            b.makeMove(moves[i]);
+            rest[i] = new Split(task, i, b, depth - 1, alpha, beta);
+            rest[i].fork();
+        }
+        for (int i = 1; i < n; i += 1) {
+            int response = rest[i].join();
+            if (task.cancelled()) {
+                break;
+            }
+            if (sense == 1 ? response > bestSoFar : response < bestSoFar) {
+                bestSoFar = response;
+                task._bestMove = moves[i];
+                if (sense == 1 ? response >= beta : response <= alpha) {
+                    for (int j = i + 1; j < n; j += 1) {
+                        rest[j].cancel(false);
+                    }
+                    break;
+                }
+            }
+        }
+        return bestSoFar;
+    }
+
+    /** A node of a split search (see split(Split)).  A node is cancelled
+     *  when the root runs out of time or when an earlier sibling, or a
+     *  sibling of an ancestor, has produced a cutoff.  The values of
+     *  cancelled nodes are meaningless. */
+    private static final class Split extends RecursiveTask<Integer> {
+
+        /** The root of a search of BOARD to DEPTH on behalf of OWNER,
+         *  trying the packed move HINT first.  SENSE is as for findMove.
+         *  The search may be cancelled when OWNER's budget runs out,
+         *  except at depth 1. */
+        Split(AI owner, Board board, int depth, int sense, int hint) {
+            _owner = owner;
+            _parent = null;
+            _index = 0;
+            _board = board;
+            _depth = depth;
+            _ply = 0;
+            _sense = sense;
+            _alpha = -INFTY;
+            _beta = INFTY;
+            _hint = hint;
+            _mayAbort = depth > 1;
+        }
+
+        /** Child number INDEX of PARENT, searching BOARD to DEPTH with
+         *  window ALPHA, BETA. */
+        Split(Split parent, int index, Board board, int depth,
+              int alpha, int beta) {
+            _owner = parent._owner;
+            _parent = parent;
+            _index = index;
+            _board = board;
+            _depth = depth;
+            _ply = parent._ply + 1;
+            _sense = -parent._sense;
+            _alpha = alpha;
+            _beta = beta;
+            _hint = 0;
+            _mayAbort = parent._mayAbort;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (cancelled()) {
+                return 0;
+            }
+            if (_parent != null && _parent._ply > 0) {
+                if (_parent._sense == 1) {
+                    _alpha = max(_alpha, _parent._best);
+                } else {
+                    _beta = min(_beta, _parent._best);
+                }
+            }
+            AI worker = ((Worker) Thread.currentThread())._searcher;
+            int value = worker.split(this);
+            if (_parent != null && !cancelled()) {
+                _parent.improve(value);
+                if (_parent._sense == 1 ? value >= _beta : value <= _alpha) {
+                    _parent.cutoff(_index);
+                }
+            }
+            return value;
+        }
+
+        /** Note that one of my children has value VALUE. */
+        synchronized void improve(int value) {
+            _best = _sense == 1 ? max(_best, value) : min(_best, value);
+        }
+
+        /** Return true iff I have been cancelled. */
+        boolean cancelled() {
+            Split node;
+            for (node = this; node._parent != null; node = node._parent) {
+                if (node._parent._cutoff < node._index) {
+                    return true;
+                }
+            }
+            return node._mayAbort && node._owner.outOfTime();
+        }
+
+        /** Note that my child number INDEX has produced a cutoff,
+         *  cancelling my later children. */
+        synchronized void cutoff(int index) {
+            _cutoff = min(_cutoff, index);
+        }
+
+        /** The AI whose search I belong to. */
+        private final AI _owner;
+        /** My parent node, or null if I am the root. */
+        private final Split _parent;
+        /** My position among my parent's children in move order. */
+        private final int _index;
+        /** My position, which I may modify. */
+        private final Board _board;
+        /** Parameters of my search, as for findMove. */
+        private final int _depth, _ply, _sense;
+        /** My search window, as for findMove. */
+        private int _alpha, _beta;
+        /** Packed move to try first, or 0. */
+        private final int _hint;
+        /** True iff the root may run out of time. */
+        private final boolean _mayAbort;
+        /** The best value found so far among my children. */
+        private volatile int _best;
+        /** Index of my first child to produce a cutoff. */
+        private volatile int _cutoff = Integer.MAX_VALUE;
+        /** The best move found from my position. */
+        private int _bestMove;
+    }
+
+    /** A fork/join worker thread with its own AI for searching. */
+    private static final class Worker extends ForkJoinWorkerThread {
+        /** A worker in POOL using SEARCHER. */
+        Worker(ForkJoinPool pool, AI searcher) {
+            super(pool);
+            _searcher = searcher;
+        }
+
+        /** The AI that carries out my part of a split search. */
+        private final AI _searcher;
+    }
+
+    /** Return the time since the start of the current search in
+     *  milliseconds. */
+    private long elapsedMillis() {
+        return (System.nanoTime() - _startTime) / 1_000_000;
+    }
+
+    /** Return true iff the current search has used up its time or has
+     *  been abandoned.  Pondering suspends the time limit. */
+    private boolean outOfTime() {
+        return _abandoned || (!_ponderOn && elapsedMillis() >= _timeLimit);
+    }
+
+    /** Count a node and return true iff the current search must stop
+     *  because it has used up its budget. */
+    private boolean outOfBudget() {
+        _nodes += 1;
+        if (_mayAbort && (_nodes & CHECK_INTERVAL) == 0) {
+            _aborted = _stop || (_task != null && _task.cancelled())
+                || outOfTime()
+                || (nodeBudget() > 0 && _nodes >= nodeBudget());
+        }
+        return _aborted;
+    }
+
+    /** Return the node budget of the current search, or 0 if it has
+     *  none: PONDER_NODES while it is pondering, and otherwise my node
+     *  limit. */
+    private long nodeBudget() {
+        return _ponderOn ? PONDER_NODES : _nodeLimit;
     }
 
     /** The move found by the last call to one of the ...FindMove methods
      *  below. */
     private Move _lastFoundMove;
 
-    /** Find a move from position BOARD and return its value, recording
-     *  the move found in _lastFoundMove iff SAVEMOVE. The move
+    /** The deepest search findMove will undertake. */
+    private static final int MAX_DEPTH = 64;
+
+    /** Depth skip patterns for helper threads, indexed by helper number
+     *  (modulo their length).  Pattern k searches depths in runs of
+     *  SKIP_SIZE[k], alternately searching and skipping each run, with
+     *  its runs shifted by SKIP_PHASE[k].  Each group of patterns with
+     *  the same size covers every phase, so that the helpers spread over
+     *  the depths instead of all searching the same ones as the main
+     *  thread. */
+    private static final int[]
+        SKIP_SIZE = { 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3,
+                      4, 4, 4, 4, 4, 4, 4, 4 },
+        SKIP_PHASE = { 0, 1, 0, 1, 2, 3, 0, 1, 2, 3, 4, 5,
+                       0, 1, 2, 3, 4, 5, 6, 7 };
+
+    /** The greatest distance from the root the search reaches, including
+     *  quiescence search. */
+    private static final int MAX_PLY = 2 * MAX_DEPTH;
+
+    /** Node budget of a pondering search while it waits for my
+     *  opponent's move. */
+    private static final long PONDER_NODES = 20_000_000;
+
+    /** Value of one piece in static scores. */
+    private static final int PIECE_VALUE = 100;
+
+    /** Penalty in static scores for each black piece next to the king. */
+    private static final int KING_ATTACKER_VALUE = 15;
+
+    /** Bonus in static scores for each edge square the king can reach in
+     *  two moves. */
+    private static final int TWO_MOVE_VALUE = 8;
+
+    /** Bonus in static scores when white is to move and the king can
+     *  reach a square with two open lines to the edge. */
+    private static final int FORK_VALUE = 2 * PIECE_VALUE;
+
+    /** Quiescence search prunes a capture unless its material gain plus
+     *  this margin could bring the static score into the window. */
+    private static final int DELTA_MARGIN = PIECE_VALUE;
+
+    /** The search checks its budget whenever the node count has none of
+     *  these bits set. */
+    private static final int CHECK_INTERVAL = 1023;
+
+    /** Node budget of the Solver run before each search. */
+    private static final long SOLVER_NODES = 2000;
+
+    /** Null moves are not tried when the side to move has fewer than
+     *  this many pieces, lest it be in zugzwang. */
+    private static final int NULL_MOVE_MIN_PIECES = 4;
+
+    /** Time budget per move in milliseconds. */
+    private long _timeLimit;
+
+    /** Depth reductions for selective search. */
+    private Reductions _reductions = Reductions.DEFAULT;
+
+    /** Endgame tablebase, or null if none. */
+    private Tablebase _tablebase;
+
+    /** Opening book, or null if none. */
+    private Book _book;
+
+    /** True iff I think on my opponent's time (see setPonder). */
+    private boolean _ponder;
+
+    /** The pending result of my pondering search, or null if I am not
+     *  pondering. */
+    private Future<Move> _pondering;
+
+    /** The Board.hash of the position my pondering search is searching. */
+    private long _ponderHash;
+
+    /** True while my pondering search waits for my opponent's move, which
+     *  suspends its time limit and replaces its node limit by
+     *  PONDER_NODES. */
+    private volatile boolean _ponderOn;
+
+    /** Set to tell my pondering search that its position did not arise. */
+    private volatile boolean _abandoned;
+
+    /** Thread running my pondering searches, or null if I have not
+     *  needed one. */
+    private ExecutorService _ponderer;
+
+    /** Node budget per move, or 0 if unlimited. */
+    private long _nodeLimit;
+
+    /** Greatest depth of iteration per move. */
+    private int _depthLimit = MAX_DEPTH;
+
+    /** Number of search threads, including the main one. */
+    private int _threads = 1;
+
+    /** The depth of the deepest completed iteration of the last search. */
+    private int _depthReached;
+
+    /** My helpers, each of which searches in a thread of _pool, or null
+     *  if I have not needed any. */
+    private AI[] _helpers;
+
+    /** Thread pool running my helpers, or null if none. */
+    private ExecutorService _pool;
+
+    /** Set to tell me, as a helper, to abandon my search. */
+    private volatile boolean _stop;
+
+    /** Number of fork/join workers for reproducible searches, or 0 for
+     *  normal searches. */
+    private int _workers;
+
+    /** True iff my searches must be reproducible (see setWorkers). */
+    private boolean _reproducible;
+
+    /** The value found by the last completed iteration. */
+    private int _score;
+
+    /** The principal variation found by the last completed iteration, as
+     *  packed moves. */
+    private int[] _bestLine = new int[0];
+
+    /** Triangular table of principal variations: while searching at ply
+     *  p, _pv[p][p] through _pv[p][_pvLength[p] - 1] hold the best line
+     *  found so far from there. */
+    private final int[][] _pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+
+    /** Lengths of the lines in _pv (see above). */
+    private final int[] _pvLength = new int[MAX_PLY + 1];
+
+    /** The principal variation of the previous iteration, whose moves
+     *  are tried first while following it if the transposition table has
+     *  no better suggestion. */
+    private final int[] _prevPV = new int[MAX_PLY + 1];
+
+    /** The length of the line in _prevPV. */
+    private int _prevPVLength;
+
+    /** True iff the node being entered lies on the line in _prevPV. */
+    private boolean _followPV;
+
+    /** Half-width of the initial aspiration window. */
+    private static final int ASPIRATION_WINDOW = PIECE_VALUE / 2;
+
+    /** Factor by which a failed aspiration window widens. */
+    private static final int ASPIRATION_GROWTH = 4;
+
+    /** Pool running my split searches, or null if I have not needed
+     *  one. */
+    private ForkJoinPool _splitPool;
+
+    /** The AIs of the workers of _splitPool. */
+    private final List<AI> _splitters = new CopyOnWriteArrayList<>();
+
+    /** As a fork/join worker, the split-search node whose subtree I am
+     *  searching with findMove, or null. */
+    private Split _task;
+
+    /** Split searches search nodes at least this deep in parallel. */
+    private static final int MIN_SPLIT_DEPTH = 3;
+
+    /** System.nanoTime at the start of the current search, or when the
+     *  opponent made the move it was pondering. */
+    private volatile long _startTime;
+
+    /** Number of positions visited by the current search. */
+    private long _nodes;
+
+    /** Statistics of the current search counted by this thread. */
+    private final SearchStats _threadStats = new SearchStats();
+
+    /** Statistics of the last search summed over all threads (see
+     *  endIteration). */
+    private final SearchStats _stats = new SearchStats();
+
+    /** True iff I report the statistics of each iteration. */
+    private boolean _reportStats;
+
+    /** True iff the current iteration may be cut short. */
+    private boolean _mayAbort;
+
+    /** True once the current iteration has run out of budget.  Its
+     *  results are then meaningless. */
+    private boolean _aborted;
+
+    /** The transposition table, shared with the other players created
+     *  from the same template. */
+    private TranspositionTable _table;
+
+    /** Move-ordering statistics for my searches. */
+    private final MoveHistory _history = new MoveHistory(MAX_DEPTH);
+
+    /** Move buffers for quiescence search: _qmoves[p] holds the moves
+     *  at ply p. */
+    private final int[][] _qmoves = new int[MAX_PLY + 1][Board.MAX_MOVES];
+
+    /** Move pickers for the search: _pickers[p] produces the moves at
+     *  ply p. */
+    private final MovePicker[] _pickers = new MovePicker[MAX_DEPTH + 1];
+    /** The analysis of the king's escapes used by staticScore. */
+    private final Escapes _escapes = new Escapes();
+
+    /** The solver for forced wins run before each search, or null if I
+     *  have not searched yet. */
+    private Solver _solver;
+
+    {
+        for (int p = 0; p <= MAX_DEPTH; p += 1) {
+            _pickers[p] = new MovePicker(_history);
+        }
+    }
+
+    /** Find a move from position BOARD, which is PLY plies from the root
+     *  of the search, and return its value, recording the move found in
+     *  _lastFoundMove iff PLY is 0. The move
      *  should have maximal value or have value > BETA if SENSE==1,
      *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
      *  DEPTH levels.  Searching at level 0 simply returns a static estimate
-     *  of the board value and does not set _lastMoveFound. */
-    private int findMove(Board board, int depth, boolean saveMove,
+     *  of the board value and does not set _lastMoveFound.  Returns 0
+     *  with _aborted set if the search budget runs out.  This is a
+     *  principal variation search: moves after the first are tried with a
+     *  null window, and searched again with the full window only if they
+     *  turn out to be better.  Late quiet moves are searched to reduced
+     *  depth first, and away from the principal variation, a null move
+     *  that still leaves the side to move outside the window prunes the
+     *  node (see Reductions).  The best line found is left in _pv[PLY]. */
+    private int findMove(Board board, int depth, int ply,
                          int sense, int alpha, int beta) {
         assert Math.abs(sense) == 1;
-        if (depth == 0 || board.winner() != null) {
+        _pvLength[ply] = ply;
+        if (depth == 0) {
+            return quiesce(board, ply, true, sense, alpha, beta);
+        }
+        if (outOfBudget()) {
+            return 0;
+        }
+        _threadStats.node(ply);
+        if (board.winner() != null) {
             return staticScore(board);
-        } else if (sense == 1) {
-            int bestSoFar = -INFTY;
-            for (Move M : board.legalMoves(WHITE)) {
-                Board next = new Board(board);
-                next.makeMove(M);
-                int response =
-                        findMove(next, depth - 1, false, -1, alpha, beta);
-                if (response >= bestSoFar) {
-                    _lastFoundMove = M;
-                    bestSoFar = response;
-                    alpha = max(alpha, bestSoFar);
-                    if (beta <= alpha) {
-                        break;
-                    }
+        }
+        if (_tablebase != null && ply > 0) {
+            int entry = _tablebase.probe(board);
+            if (entry != Tablebase.UNKNOWN) {
+                return tablebaseScore(entry, sense);
+            }
+        }
+        long key = board.hash();
+        long entry = 0;
+        if (!_reproducible) {
+            entry = _table.probe(key);
+            _threadStats.probe(entry != 0);
+        }
+        int hashMove = TranspositionTable.move(entry);
+        boolean onPV = _followPV && ply < _prevPVLength;
+        if (hashMove == 0 && onPV) {
+            hashMove = _prevPV[ply];
+        }
+        if (entry != 0 && ply > 0
+            && TranspositionTable.depth(entry) >= depth) {
+            int score = TranspositionTable.score(entry);
+            switch (TranspositionTable.bound(entry)) {
+            case TranspositionTable.EXACT:
+                return score;
+            case TranspositionTable.LOWER:
+                if (score >= beta) {
+                    return score;
                 }
+                break;
+            default:
+                if (score <= alpha) {
+                    return score;
+                }
+                break;
             }
-            return bestSoFar;
-        } else {
-            int bestSoFar = INFTY;
-            for (Move M : board.legalMoves(BLACK)) {
-                Board next = new Board(board);
-                next.makeMove(M);
-                int response =
-                        findMove(next, depth - 1, false, 1, alpha, beta);
-                if (response <= bestSoFar) {
-                    _lastFoundMove = M;
-                    bestSoFar = response;
+        }
+        boolean pvNode = (long) beta - alpha > 1;
+        int nullReduction = _reductions.nullMove(depth);
+        if (!pvNode && !_reproducible && ply > 0 && nullReduction >= 0
+            && board.lastMove() != 0 && nullMoveSafe(board)) {
+            int eval = staticScore(board);
+            if (sense == 1 ? eval >= beta : eval <= alpha) {
+                board.makeNullMove();
+                _followPV = false;
+                int value = findMove(board, max(depth - 1 - nullReduction, 0),
+                                     ply + 1, -sense, alpha, beta);
+                board.unmakeMove();
+                if (_aborted) {
+                    return 0;
+                }
+                if (sense == 1 ? value >= beta : value <= alpha) {
+                    return abs(value) >= WILL_WIN_VALUE
+                        ? (sense == 1 ? beta : alpha) : value;
+                }
+            }
+        }
+        int alpha0 = alpha, beta0 = beta;
+        MovePicker picker = _pickers[ply];
+        picker.init(board, hashMove, ply);
+        int bestSoFar = sense == 1 ? -INFTY : INFTY, bestMove = 0;
+        for (int move = picker.next(); move != 0; move = picker.next()) {
+            boolean quiet = picker.quiet();
+            boolean followPV = onPV && move == _prevPV[ply];
+            int newDepth =
+                picker.fork() && ply + depth < MAX_DEPTH ? depth : depth - 1;
+            board.makeMove(move);
+            _followPV = followPV;
+            int response;
+            if (bestMove == 0) {
+                response =
+                    findMove(board, newDepth, ply + 1, -sense, alpha, beta);
+            } else {
+                int a = sense == 1 ? alpha : beta - 1,
+                    b = sense == 1 ? alpha + 1 : beta;
+                int reduction = !quiet || _reproducible || ply == 0 ? 0
+                    : min(_reductions.lateMove(depth, picker.count(), pvNode),
+                          depth - 2);
+                response = findMove(board, newDepth - max(reduction, 0),
+                                    ply + 1, -sense, a, b);
+                if (reduction > 0 && !_aborted
+                    && (sense == 1 ? response > alpha : response < beta)) {
+                    _followPV = followPV;
+                    response =
+                        findMove(board, newDepth, ply + 1, -sense, a, b);
+                }
+                if (response > alpha && response < beta && !_aborted) {
+                    _followPV = followPV;
+                    response = findMove(board, newDepth, ply + 1, -sense,
+                                        alpha, beta);
+                }
+            }
+            board.unmakeMove();
+            if (_aborted) {
+                return 0;
+            }
+            if (bestMove == 0 || (sense == 1 ? response > bestSoFar
+                                  : response < bestSoFar)) {
+                bestMove = move;
+                if (ply == 0) {
+                    _lastFoundMove = Move.mv(move);
+                }
+                bestSoFar = response;
+                if (response > alpha && response < beta) {
+                    extendPV(ply, move);
+                }
+                if (sense == 1) {
+                    alpha = max(alpha, bestSoFar);
+                } else {
                     beta = min(beta, bestSoFar);
-                    if (beta <= alpha) {
-                        break;
+                }
+                if (beta <= alpha) {
+                    _threadStats.cutoff(picker.count());
+                    if (quiet && !_reproducible) {
+                        _history.cutoff(ply, move, board.lastMove(), depth);
                     }
+                    break;
                 }
             }
-            return bestSoFar;
         }
+        if (bestMove == 0) {
+            return staticScore(board);
+        }
+        int bound = bestSoFar >= beta0 ? TranspositionTable.LOWER
+            : bestSoFar <= alpha0 ? TranspositionTable.UPPER
+            : TranspositionTable.EXACT;
+        if (!_reproducible) {
+            _table.store(key, depth, bound, bestSoFar, bestMove);
+        }
+        return bestSoFar;
     }
 
-
-    /** Return a heuristically determined maximum search depth
-     *  based on characteristics of BOARD. */
-    private static int maxDepth(Board board) {
-        return 2;
+    /** Make the best line at PLY consist of MOVE followed by the best line
+     *  at PLY + 1. */
+    private void extendPV(int ply, int move) {
+        int length = max(_pvLength[ply + 1], ply + 1);
+        _pv[ply][ply] = move;
+        System.arraycopy(_pv[ply + 1], ply + 1, _pv[ply], ply + 1,
+                         length - ply - 1);
+        _pvLength[ply] = length;
     }
 
-    /** Return a heuristic value for BOARD. */
-    private int staticScore(Board board) {
-        List<String> encodedlist = board.getEncoded();
-        String lastboard = encodedlist.get(encodedlist.size() - 1);
-        int blackPieces = 0;
-        int whitePieces = 0;
-        for (int i = 1; i < lastboard.length(); i++) {
-            switch (lastboard.charAt(i)) {
-            case 'B': blackPieces++;
-                break;
-            case 'W': whitePieces++;
-                break;
-            default:
-                break;
+    /** Return the value of BOARD, which is PLY plies from the root,
+     *  searching only moves that capture and, if KINGRUNS, the king's runs
+     *  toward the edge.  Each side may instead stand pat on the static
+     *  score.  Captures that could not lift the score past the window even
+     *  with a margin of DELTA_MARGIN are pruned.  SENSE, ALPHA, and BETA
+     *  are as for findMove.  Returns 0 with _aborted set if the search
+     *  budget runs out. */
+    private int quiesce(Board board, int ply, boolean kingRuns,
+                        int sense, int alpha, int beta) {
+        _pvLength[ply] = ply;
+        if (outOfBudget()) {
+            return 0;
+        }
+        _threadStats.quiescenceNode(ply);
+        int standPat = staticScore(board);
+        if (board.winner() != null || ply >= MAX_PLY) {
+            return standPat;
+        }
+        if (sense == 1) {
+            if (standPat >= beta) {
+                return standPat;
             }
+            alpha = max(alpha, standPat);
+        } else {
+            if (standPat <= alpha) {
+                return standPat;
+            }
+            beta = min(beta, standPat);
+        }
+        int[] moves = _qmoves[ply];
+        int captures = board.captureMoves(board.turn(), moves), n = captures;
+        if (kingRuns && board.turn() == WHITE) {
+            n = board.kingRunMoves(moves, n);
         }
+        boolean decisive = abs(standPat) >= WILL_WIN_VALUE;
+        int bestSoFar = standPat;
+        for (int i = 0; i < n; i += 1) {
+            int move = moves[i];
+            if (i < captures && !decisive && !_reproducible) {
+                int gain = PIECE_VALUE * Integer.bitCount(
+                    board.captures(Move.from(move), Move.to(move))
+                    & Board.CAPTURE_DIRS);
+                if (sense == 1 ? standPat + gain + DELTA_MARGIN <= alpha
+                    : standPat - gain - DELTA_MARGIN >= beta) {
+                    continue;
+                }
+            } else if (i >= captures && board.isCapture(move)) {
+                continue;
+            }
+            board.makeMove(move);
+            int response =
+                quiesce(board, ply + 1, false, -sense, alpha, beta);
+            board.unmakeMove();
+            if (_aborted) {
+                return 0;
+            }
+            if (sense == 1 ? response > bestSoFar : response < bestSoFar) {
+                bestSoFar = response;
+                if (sense == 1) {
+                    alpha = max(alpha, bestSoFar);
+                } else {
+                    beta = min(beta, bestSoFar);
+                }
+                if (beta <= alpha) {
+                    break;
+                }
+            }
+        }
+        return bestSoFar;
+    }
 
-        Square king = board.kingPosition();
+    /** Return the score of a position whose tablebase entry is ENTRY,
+     *  which is not UNKNOWN, and in which the side to move has sign SENSE
+     *  (as for findMove). */
+    private static int tablebaseScore(int entry, int sense) {
+        int value = TABLEBASE_VALUE - Tablebase.plies(entry);
+        return Tablebase.wins(entry) ? sense * value : -sense * value;
+    }
 
-        if (king == null) {
+    /** Return true iff it is safe to try a null move on BOARD: the side
+     *  to move has enough pieces not to risk zugzwang, and the king has no
+     *  open line to the edge. */
+    private boolean nullMoveSafe(Board board) {
+        return board.pieceCount(KING) > 0
+            && board.pieceCount(board.turn()) >= NULL_MOVE_MIN_PIECES
+            && board.kingEscapeLines() == 0;
+    }
+
+    /** Return a heuristic value for BOARD.  The material and square
+     *  terms are kept up to date by BOARD as it changes (see
+     *  Board.psqScore and Board.kingAttackers); the escape terms come from
+     *  a fresh analysis of the king's routes to the edge (see Escapes). */
+    int staticScore(Board board) {
+        int blackPieces = board.pieceCount(BLACK);
+        int whitePieces = board.pieceCount(WHITE);
+
+        if (board.pieceCount(KING) == 0) {
             return -INFTY;
         }
-        if (king.isEdge()) {
+        if (board.kingOnEdge()) {
             return INFTY;
         }
 
-        int unconqueredKing = 0;
-        if (board.isLegalMove(king, sq(king.col(), 0))) {
-            unconqueredKing++;
-        }
-        if (board.isLegalMove(king, sq(king.col(), 8))) {
-            unconqueredKing++;
-        }
-        if (board.isLegalMove(king, sq(0, king.row()))) {
-            unconqueredKing++;
-        }
-        if (board.isLegalMove(king, sq(8, king.row()))) {
-            unconqueredKing++;
-        }
-        if (unconqueredKing > 0) {
+        _escapes.analyze(board);
+        if (_escapes.direct() > 0) {
             if (board.turn() == BLACK) {
                 return WILL_WIN_VALUE;
             } else {
                 return WINNING_VALUE;
             }
         }
-        return (-blackPieces + whitePieces);
+        int score = PIECE_VALUE * (-blackPieces + whitePieces)
+            + board.psqScore()
+            - KING_ATTACKER_VALUE * board.kingAttackers()
+            + TWO_MOVE_VALUE * _escapes.twoMove();
+        if (_escapes.fork() && board.turn() == WHITE) {
+            score += FORK_VALUE;
+        }
+        return score;
     }
 }
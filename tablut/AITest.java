@@ -0,0 +1,31 @@
+package tablut;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the AI class.
+ *  @author ANUJS
+ */
+public class AITest {
+
+    @Test
+    public void testStatsAcrossIterations() throws IOException {
+        Suite suite = Suite.standard();
+        AI player = new AI(new TranspositionTable(1));
+        player.setThreads(2);
+        player.setTimeLimit(Long.MAX_VALUE);
+        player.setDepthLimit(5);
+        for (int k = 0; k < suite.size(); k += 1) {
+            player.search(suite.position(k));
+            SearchStats stats = player.stats();
+            for (int i = 0; i < stats.iterations(); i += 1) {
+                assertTrue(stats.nodes(i) > 0);
+                assertTrue(i == 0 || stats.nodes(i) >= stats.nodes(i - 1));
+                assertTrue(stats.branchingFactor(i) >= 0);
+            }
+        }
+    }
+
+}
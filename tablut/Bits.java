@@ -0,0 +1,135 @@
+package tablut;
+
+import static tablut.Square.BOARD_SIZE;
+import static tablut.Square.NUM_SQUARES;
+
+/** Tables and utilities for 81-bit sets of squares (bitboards).  A set
+ *  is packed into two longs: the low word holds the squares with indices
+ *  0-63 (bit i for square i) and the high word holds squares 64-80 (bit
+ *  i - 64 for square i).  Directions are numbered as in Square.rookMove:
+ *  0 for north, 1 for east, 2 for south, and 3 for west.
+ *  @author ANUJS
+ */
+final class Bits {
+
+    /** Number of squares held in the low word of a set. */
+    static final int LOW_BITS = 64;
+
+    /** Index displacement of one step in each direction. */
+    static final int[] STEP = { BOARD_SIZE, 1, -BOARD_SIZE, -1 };
+
+    /** RAY_LO[4 * i + d] and RAY_HI[4 * i + d] hold the squares one rook
+     *  move in direction d from square i (not including i itself). */
+    static final long[] RAY_LO = new long[4 * NUM_SQUARES],
+        RAY_HI = new long[4 * NUM_SQUARES];
+
+    /** RAY_STOP[4 * i + d] is the index one step beyond the last square of
+     *  the ray from i in direction d.  It need not denote a square on the
+     *  board; it serves as a sentinel for sliding loops. */
+    static final int[] RAY_STOP = new int[4 * NUM_SQUARES];
+
+    /** NEIGHBOR[4 * i + d] is the index of the square adjacent to i in
+     *  direction d, or -1 if there is none. */
+    static final int[] NEIGHBOR = new int[4 * NUM_SQUARES];
+
+    /** ADJ_LO[i] and ADJ_HI[i] hold the squares orthogonally adjacent to
+     *  square i. */
+    static final long[] ADJ_LO = new long[NUM_SQUARES],
+        ADJ_HI = new long[NUM_SQUARES];
+
+    /** The squares on the edge of the board. */
+    static final long EDGE_LO, EDGE_HI;
+
+    static {
+        long edgeLo = 0, edgeHi = 0;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            int c0 = i % BOARD_SIZE, r0 = i / BOARD_SIZE;
+            if (Square.sq(i).isEdge()) {
+                edgeLo |= lo(i);
+                edgeHi |= hi(i);
+            }
+            for (int d = 0; d < 4; d += 1) {
+                int k = 4 * i + d;
+                int dc = d == 1 ? 1 : d == 3 ? -1 : 0,
+                    dr = d == 0 ? 1 : d == 2 ? -1 : 0;
+                int c1 = c0 + dc, r1 = r0 + dr, last = i;
+                NEIGHBOR[k] = Square.exists(c1, r1) ? i + STEP[d] : -1;
+                while (Square.exists(c1, r1)) {
+                    last = r1 * BOARD_SIZE + c1;
+                    RAY_LO[k] |= lo(last);
+                    RAY_HI[k] |= hi(last);
+                    c1 += dc;
+                    r1 += dr;
+                }
+                RAY_STOP[k] = last + STEP[d];
+                if (NEIGHBOR[k] >= 0) {
+                    ADJ_LO[i] |= lo(NEIGHBOR[k]);
+                    ADJ_HI[i] |= hi(NEIGHBOR[k]);
+                }
+            }
+        }
+        EDGE_LO = edgeLo;
+        EDGE_HI = edgeHi;
+    }
+
+    /** Return the low word of the singleton set {INDEX}. */
+    static long lo(int index) {
+        return index < LOW_BITS ? 1L << index : 0L;
+    }
+
+    /** Return the high word of the singleton set {INDEX}. */
+    static long hi(int index) {
+        return index < LOW_BITS ? 0L : 1L << (index - LOW_BITS);
+    }
+
+    /** Return true iff square INDEX is in the set LO, HI. */
+    static boolean has(long lo, long hi, int index) {
+        return index < LOW_BITS
+            ? (lo & (1L << index)) != 0
+            : (hi & (1L << (index - LOW_BITS))) != 0;
+    }
+
+    /** Return the number of squares in the set LO, HI. */
+    static int count(long lo, long hi) {
+        return Long.bitCount(lo) + Long.bitCount(hi);
+    }
+
+    /** Return the smallest index in the set LO, HI, or -1 if it is
+     *  empty. */
+    static int first(long lo, long hi) {
+        if (lo != 0) {
+            return Long.numberOfTrailingZeros(lo);
+        } else if (hi != 0) {
+            return LOW_BITS + Long.numberOfTrailingZeros(hi);
+        }
+        return -1;
+    }
+
+    /** Return the index of the first square in the set OCCLO, OCCHI met
+     *  when sliding from square INDEX in direction DIR, or
+     *  RAY_STOP[4 * INDEX + DIR] if the ray is clear to the edge.  The
+     *  squares strictly between INDEX and the result are exactly those
+     *  reachable by a rook move in that direction. */
+    static int blocker(int index, int dir, long occLo, long occHi) {
+        int k = 4 * index + dir;
+        long lo = RAY_LO[k] & occLo, hi = RAY_HI[k] & occHi;
+        if (STEP[dir] > 0) {
+            if (lo != 0) {
+                return Long.numberOfTrailingZeros(lo);
+            } else if (hi != 0) {
+                return LOW_BITS + Long.numberOfTrailingZeros(hi);
+            }
+        } else {
+            if (hi != 0) {
+                return 2 * LOW_BITS - 1 - Long.numberOfLeadingZeros(hi);
+            } else if (lo != 0) {
+                return LOW_BITS - 1 - Long.numberOfLeadingZeros(lo);
+            }
+        }
+        return RAY_STOP[k];
+    }
+
+    /** Not instantiable. */
+    private Bits() {
+    }
+}
@@ -2,15 +2,16 @@ package tablut;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Formatter;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Arrays;
+import java.util.Random;
 
 
 import static tablut.Piece.*;
 import static tablut.Square.*;
 import static tablut.Move.mv;
+import static tablut.Bits.*;
 
 
 /**
@@ -25,6 +26,12 @@ class Board {
      */
     static final int SIZE = 9;
 
+    /**
+     * An upper bound on the number of legal moves in any position: at most
+     * 16 pieces on a side, each with at most 16 destinations.
+     */
+    static final int MAX_MOVES = 16 * 16;
+
     /**
      * The throne (or castle) square and its four surrounding squares..
      */
@@ -35,11 +42,21 @@ class Board {
             ETHRONE = sq(5, 4);
 
     /**
-     * .
+     * The throne and the four squares around it, where the king can only
+     * be captured by surrounding it on all four sides.
      */
-    private ArrayList<Square> throneArray =
-            new ArrayList<Square>(Arrays.
-                    asList(THRONE, NTHRONE, ETHRONE, STHRONE, WTHRONE));
+    private static final long THRONE_AREA_LO, THRONE_AREA_HI;
+
+    static {
+        long lo = 0, hi = 0;
+        for (Square s : new Square[] {
+                THRONE, NTHRONE, ETHRONE, STHRONE, WTHRONE }) {
+            lo |= Bits.lo(s.index());
+            hi |= Bits.hi(s.index());
+        }
+        THRONE_AREA_LO = lo;
+        THRONE_AREA_HI = hi;
+    }
 
 
     /**
@@ -82,50 +99,46 @@ class Board {
         if (model == this) {
             return;
         }
-        init();
-        _encoded.remove(0);
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                _board[i][j] = model._board[i][j];
-            }
-        }
+        System.arraycopy(model._lo, 0, _lo, 0, _lo.length);
+        System.arraycopy(model._hi, 0, _hi, 0, _hi.length);
         _moveCount = model._moveCount;
         _turn = model._turn;
         _winner = model._winner;
         _repeated = model._repeated;
-        _kingPosition = model.kingPosition();
         _moveLimit = model.moveLimit();
-        for (int i = 0; i < model._encoded.size(); i++) {
-            _encoded.add(model._encoded.get(i));
+        _hash = model._hash;
+        _psq = model._psq;
+        _kingAttackers = model._kingAttackers;
+        _history.copy(model._history);
+        if (_undo.length < model._undoSize) {
+            _undo = new int[model._undo.length];
         }
+        System.arraycopy(model._undo, 0, _undo, 0, model._undoSize);
+        _undoSize = model._undoSize;
     }
 
     /**
      * Clears the board to the initial position.
      */
     void init() {
-        _board = new Piece[SIZE][SIZE];
+        for (Square s : SQUARE_LIST) {
+            put(EMPTY, s);
+        }
         for (Square i : INITIAL_ATTACKERS) {
-            _board[i.col()][i.row()] = BLACK;
+            put(BLACK, i);
         }
         for (Square i : INITIAL_DEFENDERS) {
-            _board[i.col()][i.row()] = WHITE;
-        }
-        _board[THRONE.col()][THRONE.row()] = KING;
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                if (_board[i][j] == null) {
-                    _board[i][j] = EMPTY;
-                }
-            }
+            put(WHITE, i);
         }
+        put(KING, THRONE);
         _moveCount = 0;
         _turn = BLACK;
         _winner = null;
         _repeated = false;
-        _kingPosition = THRONE;
-        _encoded = new ArrayList<String>();
-        _encoded.add(encodedBoard());
+        _hash = computeHash();
+        _history.clear();
+        _history.push(_hash);
+        _undoSize = 0;
     }
 
     /**
@@ -167,12 +180,34 @@ class Board {
      * position is a repeat.
      */
     private void checkRepeated() {
-        String encoded = encodedBoard();
-        if (_encoded.contains(encoded)) {
+        if (_history.contains(_hash)) {
             _winner = turn();
             _repeated = true;
         }
-        _encoded.add(encoded);
+        _history.push(_hash);
+    }
+
+    /**
+     * Return the Zobrist hash key of the current position, including the
+     * side to move.  Equal positions have equal keys.
+     */
+    long hash() {
+        return _hash;
+    }
+
+    /**
+     * Return the Zobrist key of the current position, computed from
+     * scratch.
+     */
+    private long computeHash() {
+        long key = _turn == WHITE ? ZOBRIST_WHITE_TO_MOVE : 0L;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            Piece p = get(i);
+            if (p != EMPTY) {
+                key ^= ZOBRIST[p.ordinal() * NUM_SQUARES + i];
+            }
+        }
+        return key;
     }
 
     /**
@@ -187,7 +222,78 @@ class Board {
      * Return location of the king.
      */
     Square kingPosition() {
-        return _kingPosition;
+        int k = first(_lo[KING_BITS], _hi[KING_BITS]);
+        return k < 0 ? null : sq(k);
+    }
+
+    /**
+     * Return the sum of the piece-square values (see PSQ) of the pieces on
+     * the board.
+     */
+    int psqScore() {
+        return _psq;
+    }
+
+    /**
+     * Return the number of black pieces orthogonally adjacent to the
+     * king (0 if there is no king).
+     */
+    int kingAttackers() {
+        return _kingAttackers;
+    }
+
+    /**
+     * Return the index of the king's square, or -1 if there is no king.
+     */
+    int kingIndex() {
+        return first(_lo[KING_BITS], _hi[KING_BITS]);
+    }
+
+    /**
+     * Return the number of directions in which the king has an open line
+     * to the edge of the board, along which it could escape on its next
+     * move.  Returns 0 if there is no king.
+     */
+    int kingEscapeLines() {
+        int king = kingIndex();
+        if (king < 0) {
+            return 0;
+        }
+        long occLo = occupiedLo(), occHi = occupiedHi();
+        int lines = 0;
+        for (int dir = 0; dir < 4; dir += 1) {
+            int k = 4 * king + dir;
+            if ((RAY_LO[k] | RAY_HI[k]) != 0
+                && blocker(king, dir, occLo, occHi) == RAY_STOP[k]) {
+                lines += 1;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Return the number of pieces of kind P (WHITE, BLACK, or KING) on the
+     * board.
+     */
+    int pieceCount(Piece p) {
+        int k = p.ordinal();
+        return count(_lo[k], _hi[k]);
+    }
+
+    /**
+     * Return the low word of the set of squares holding pieces of kind P
+     * (WHITE, BLACK, or KING).
+     */
+    long piecesLo(Piece p) {
+        return _lo[p.ordinal()];
+    }
+
+    /**
+     * Return the high word of the set of squares holding pieces of kind P
+     * (WHITE, BLACK, or KING).
+     */
+    long piecesHi(Piece p) {
+        return _hi[p.ordinal()];
     }
 
     /**
@@ -202,7 +308,33 @@ class Board {
      * 0 <= COL, ROW <= 9.
      */
     final Piece get(int col, int row) {
-        return _board[col][row];
+        return get(row * SIZE + col);
+    }
+
+    /**
+     * Return the contents of the square with index INDEX.
+     */
+    final Piece get(int index) {
+        if (index < LOW_BITS) {
+            long bit = 1L << index;
+            if ((_lo[BLACK_BITS] & bit) != 0) {
+                return BLACK;
+            } else if ((_lo[WHITE_BITS] & bit) != 0) {
+                return WHITE;
+            } else if ((_lo[KING_BITS] & bit) != 0) {
+                return KING;
+            }
+        } else {
+            long bit = 1L << (index - LOW_BITS);
+            if ((_hi[BLACK_BITS] & bit) != 0) {
+                return BLACK;
+            } else if ((_hi[WHITE_BITS] & bit) != 0) {
+                return WHITE;
+            } else if ((_hi[KING_BITS] & bit) != 0) {
+                return KING;
+            }
+        }
+        return EMPTY;
     }
 
     /**
@@ -216,15 +348,39 @@ class Board {
      * Set square S to P.
      */
     final void put(Piece p, Square s) {
-        _board[s.col()][s.row()] = p;
+        put(p, s.index());
     }
 
     /**
-     * Set square S to P and record for undoing.
+     * Set the square with index INDEX to P.
      */
-    final void revPut(Piece p, Square s) {
-        put(p, s);
-        checkRepeated();
+    private void put(Piece p, int index) {
+        long lo = Bits.lo(index), hi = Bits.hi(index);
+        Piece old = get(index);
+        if (old != EMPTY) {
+            _lo[old.ordinal()] &= ~lo;
+            _hi[old.ordinal()] &= ~hi;
+            _hash ^= ZOBRIST[old.ordinal() * NUM_SQUARES + index];
+            _psq -= PSQ[old.ordinal() * NUM_SQUARES + index];
+        }
+        if (p != EMPTY) {
+            _lo[p.ordinal()] |= lo;
+            _hi[p.ordinal()] |= hi;
+            _hash ^= ZOBRIST[p.ordinal() * NUM_SQUARES + index];
+            _psq += PSQ[p.ordinal() * NUM_SQUARES + index];
+        }
+        if (old == KING || p == KING) {
+            _kingAttackers = 0;
+            int king = first(_lo[KING_BITS], _hi[KING_BITS]);
+            if (king >= 0) {
+                _kingAttackers = count(ADJ_LO[king] & _lo[BLACK_BITS],
+                                       ADJ_HI[king] & _hi[BLACK_BITS]);
+            }
+        } else if ((old == BLACK) != (p == BLACK)
+                   && ((ADJ_LO[index] & _lo[KING_BITS]) != 0
+                       || (ADJ_HI[index] & _hi[KING_BITS]) != 0)) {
+            _kingAttackers += p == BLACK ? 1 : -1;
+        }
     }
 
     /**
@@ -240,21 +396,9 @@ class Board {
      * squares along it, other than FROM, must be empty.
      */
     boolean isUnblockedMove(Square from, Square to) {
-        if ((to.row() > SIZE && to.col() > SIZE)
-                || (from.row() > SIZE && from.col() > SIZE)) {
-            throw new IllegalArgumentException(
-                    "Square row or column out of range.");
-        }
         int dir = from.direction(to);
-        for (Square i : ROOK_SQUARES[from.index()][dir]) {
-            if (get(i) != EMPTY) {
-                return false;
-            }
-            if (i == to) {
-                break;
-            }
-        }
-        return true;
+        int stop = blocker(from.index(), dir, occupiedLo(), occupiedHi());
+        return STEP[dir] > 0 ? to.index() < stop : to.index() > stop;
     }
 
     /**
@@ -269,11 +413,8 @@ class Board {
      */
     boolean isLegal(Square from, Square to) {
         if (isLegal(from)) {
-            if (to == THRONE) {
-                if (get(from) != KING) {
-                    return false;
-                }
-                return true;
+            if (to == THRONE && get(from) != KING) {
+                return false;
             }
             return isUnblockedMove(from, to);
         }
@@ -304,27 +445,46 @@ class Board {
      * Move FROM-TO, assuming this is a legal move.
      */
     void makeMove(Square from, Square to) {
-        if (_kingPosition != null && _kingPosition.isEdge()) {
+        makeMove(from.index(), to.index(), isLegal(from, to));
+    }
+
+    /**
+     * Make the packed move MOVE (see Move.pack), which must be legal, as
+     * produced by legalMoves(Piece, int[]).  The move is not checked.
+     */
+    void makeMove(int move) {
+        makeMove(Move.from(move), Move.to(move), true);
+    }
+
+    /**
+     * Move from the square with index FROM to that with index TO.  The
+     * piece is moved iff LEGAL; in either case the turn passes and captures
+     * around TO are resolved.
+     */
+    private void makeMove(int from, int to, boolean legal) {
+        int record = from | (to << UNDO_TO_SHIFT)
+            | (_winner == null ? 0 : _winner.ordinal()) << UNDO_WINNER_SHIFT
+            | (_repeated ? UNDO_REPEATED : 0);
+        if (kingOnEdge()) {
             _winner = WHITE;
         }
-        if (isLegal(from, to)) {
+        if (legal) {
             put(get(from), to);
             put(EMPTY, from);
-            if (get(to) == KING) {
-                _kingPosition = to;
-            }
+            record |= UNDO_MOVED;
         }
-        if (_kingPosition != null && _kingPosition.isEdge()) {
+        if (kingOnEdge()) {
             _winner = WHITE;
         }
         _moveCount++;
         _turn = ((_turn == WHITE) ? BLACK : WHITE);
-        int count = 0;
-        for (int i = 0; i < 4; i++) {
-            if (ROOK_SQUARES[to.index()][i].size() >= 2) {
-                capture(to, ROOK_SQUARES[to.index()][i].get(1));
-            }
+        _hash ^= ZOBRIST_WHITE_TO_MOVE;
+        record |= capture(to) << UNDO_CAPTURE_SHIFT;
+        if (_undoSize == _undo.length) {
+            _undo = Arrays.copyOf(_undo, 2 * _undoSize);
         }
+        _undo[_undoSize] = record;
+        _undoSize += 1;
         checkRepeated();
         boolean setWinner = false;
         if (_repeated) {
@@ -343,95 +503,238 @@ class Board {
     }
 
     /**
-     * Capture the piece between SQ0 and SQ2, assuming a piece just moved to
-     * SQ0 and the necessary conditions are satisfied.
-     */
-    private void capture(Square sq0, Square sq2) {
-        int dir = sq0.direction(sq2);
-        Square sq1 = ROOK_SQUARES[sq0.index()][dir].get(0);
-        if (get(sq1) != EMPTY) {
-            Piece side0 = get(sq0).side(), side2 = get(sq2).side(),
-                    side1 = get(sq1);
-            if (side0 != side1.side()) {
-                if (!(side1 == KING && throneArray.contains(sq1))) {
-                    if (ishostile(get(sq1), sq2)) {
-                        put(EMPTY, sq1);
-                        if (side1 == KING) {
-                            _winner = BLACK;
-                            _kingPosition = null;
-                        }
-                    }
-                } else {
-                    if (throneArray.contains(sq1)) {
-                        int count = 0;
-                        for (int i = 0; i < 4; i++) {
-                            if (ishostile(WHITE,
-                                    ROOK_SQUARES[sq1.index()][i].get(0))) {
-                                count++;
-                            }
-                        }
-                        if (count == 4) {
-                            put(EMPTY, sq1);
-                            _kingPosition = null;
-                            _winner = BLACK;
-                        }
-                    }
-                }
+     * Return true iff the king is on the edge of the board.
+     */
+    boolean kingOnEdge() {
+        return (_lo[KING_BITS] & EDGE_LO) != 0
+            || (_hi[KING_BITS] & EDGE_HI) != 0;
+    }
+
+    /**
+     * Perform all captures made by the piece that just moved to the square
+     * with index SQ0, and return their record (see captures).
+     */
+    private int capture(int sq0) {
+        int captures = captures(sq0, sq0);
+        for (int dir = 0; dir < 4; dir += 1) {
+            if ((captures & (1 << dir)) != 0) {
+                put(EMPTY, NEIGHBOR[4 * sq0 + dir]);
             }
         }
+        if ((captures & CAPTURED_KING) != 0) {
+            _winner = BLACK;
+        }
+        return captures;
     }
 
     /**
-     * There is @param center
-     * and @param sq
-     * and @return boolean.
+     * Return a record of the captures the piece on the square with index
+     * FROM would make by moving to the square with index TO, or that the
+     * piece on TO makes if FROM == TO.  Does not modify the board.  A
+     * piece is captured when it is sandwiched between TO and a square
+     * hostile to it: one holding an enemy piece, the empty throne, or, for
+     * a defender, the occupied throne with three attackers around it.  The
+     * king on or next to the throne must instead be hostile on all four
+     * sides.  In the record, bit d is set iff the piece in direction d from
+     * TO is taken, and if one of those is the king, bit 4 is set and bits
+     * 5-6 hold its direction.
      */
-    private boolean ishostile(Piece center, Square sq) {
-        if (get(sq) == EMPTY) {
-            if (sq == THRONE) {
-                return true;
+    int captures(int from, int to) {
+        Piece mover = get(from);
+        if (mover == EMPTY) {
+            return 0;
+        }
+        long keepLo = ~Bits.lo(from), keepHi = ~Bits.hi(from),
+            toLo = Bits.lo(to), toHi = Bits.hi(to);
+        long whiteLo = (_lo[WHITE_BITS] | _lo[KING_BITS]) & keepLo,
+            whiteHi = (_hi[WHITE_BITS] | _hi[KING_BITS]) & keepHi,
+            blackLo = _lo[BLACK_BITS] & keepLo,
+            blackHi = _hi[BLACK_BITS] & keepHi,
+            kingLo = _lo[KING_BITS] & keepLo,
+            kingHi = _hi[KING_BITS] & keepHi;
+        if (mover == BLACK) {
+            blackLo |= toLo;
+            blackHi |= toHi;
+        } else {
+            whiteLo |= toLo;
+            whiteHi |= toHi;
+            if (mover == KING) {
+                kingLo |= toLo;
+                kingHi |= toHi;
             }
-            return false;
-        } else if (center == WHITE && sq == THRONE) {
-            int count = 0;
-            for (int i = 0; i < 4; i++) {
-                if (get(ROOK_SQUARES[sq.index()][i].get(0)) == BLACK) {
-                    count++;
-                }
-                if (count == 3) {
-                    return true;
-                }
+        }
+        int throne = THRONE.index();
+        boolean throneEmpty = !has(whiteLo | blackLo, whiteHi | blackHi,
+                                   throne);
+        long hostileLo, hostileHi, victimsLo, victimsHi;
+        if (mover == BLACK) {
+            victimsLo = whiteLo;
+            victimsHi = whiteHi;
+            hostileLo = blackLo;
+            hostileHi = blackHi;
+            if (throneEmpty || count(blackLo & ADJ_LO[throne],
+                                     blackHi & ADJ_HI[throne]) >= 3) {
+                hostileLo |= Bits.lo(throne);
+                hostileHi |= Bits.hi(throne);
             }
-            if (count >= 3) {
-                return true;
+        } else {
+            victimsLo = blackLo;
+            victimsHi = blackHi;
+            hostileLo = whiteLo;
+            hostileHi = whiteHi;
+            if (throneEmpty) {
+                hostileLo |= Bits.lo(throne);
+                hostileHi |= Bits.hi(throne);
+            }
+        }
+        victimsLo &= ADJ_LO[to];
+        victimsHi &= ADJ_HI[to];
+        if ((victimsLo | victimsHi) == 0) {
+            return 0;
+        }
+        int captures = 0;
+        for (int dir = 0; dir < 4; dir += 1) {
+            int sq1 = NEIGHBOR[4 * to + dir];
+            if (sq1 < 0 || !has(victimsLo, victimsHi, sq1)) {
+                continue;
+            }
+            int sq2 = NEIGHBOR[4 * sq1 + dir];
+            if (sq2 < 0) {
+                continue;
             }
+            boolean king = has(kingLo, kingHi, sq1), captured;
+            if (king && has(THRONE_AREA_LO, THRONE_AREA_HI, sq1)) {
+                captured = (ADJ_LO[sq1] & ~hostileLo) == 0
+                    && (ADJ_HI[sq1] & ~hostileHi) == 0;
+            } else {
+                captured = has(hostileLo, hostileHi, sq2);
+            }
+            if (captured) {
+                captures |= 1 << dir;
+                if (king) {
+                    captures |= CAPTURED_KING | (dir << KING_DIR_SHIFT);
+                }
+            }
+        }
+        return captures;
+    }
+
+    /**
+     * Return true iff the packed move MOVE would capture at least one
+     * piece.
+     */
+    boolean isCapture(int move) {
+        return captures(Move.from(move), Move.to(move)) != 0;
+    }
+
+    /**
+     * Return true iff the packed move MOVE would capture the king.
+     */
+    boolean capturesKing(int move) {
+        return (captures(Move.from(move), Move.to(move)) & CAPTURED_KING)
+            != 0;
+    }
+
+    /**
+     * Return true iff the packed move MOVE is legal in the current
+     * position.  MOVE may be any int, such as a move recalled from a hash
+     * table that belongs to another position.
+     */
+    boolean isLegal(int move) {
+        int from = Move.from(move), to = Move.to(move);
+        if (from >= NUM_SQUARES || to >= NUM_SQUARES || from == to) {
             return false;
-        } else {
-            return center.opponent() == get(sq).side();
         }
+        Square f = sq(from), t = sq(to);
+        return f.isRookMove(t) && isLegal(f, t);
     }
 
     /**
-     * Undo one move.  Has no effect on the initial board.
+     * Pass the turn to the opponent without moving (a null move, for the
+     * search's use).  The resulting position does not count toward
+     * repetitions.  Take it back with unmakeMove.
      */
-    void undo() {
-        if (_moveCount > 0) {
-            undoPosition();
-            decode(_encoded.get(_encoded.size() - 1));
-            _moveCount--;
-            _turn = _turn.opponent();
+    void makeNullMove() {
+        _turn = _turn.opponent();
+        _hash ^= ZOBRIST_WHITE_TO_MOVE;
+        if (_undoSize == _undo.length) {
+            _undo = Arrays.copyOf(_undo, 2 * _undoSize);
+        }
+        _undo[_undoSize] = UNDO_NULL;
+        _undoSize += 1;
+    }
 
+    /**
+     * Make room for PLIES more moves, null or not, to be made and taken
+     * back without allocating.
+     */
+    void reserve(int plies) {
+        if (_undo.length < _undoSize + plies) {
+            _undo = Arrays.copyOf(_undo, _undoSize + plies);
         }
+        _history.reserve(plies);
     }
 
     /**
-     * Remove record of current position in the set of positions encountered,
-     * unless it is a repeated position or we are at the first move.
+     * Return the last move made, packed, or 0 if there is none to undo or
+     * it was a null move.
      */
-    private void undoPosition() {
-        if (_moveCount > 0 || !_repeated) {
-            _encoded.remove(encodedBoard());
+    int lastMove() {
+        if (_undoSize == 0) {
+            return 0;
         }
+        int record = _undo[_undoSize - 1];
+        return Move.pack(record & UNDO_SQUARE_MASK,
+                         (record >>> UNDO_TO_SHIFT) & UNDO_SQUARE_MASK);
+    }
+
+    /**
+     * Undo one move.  Has no effect on the initial board.
+     */
+    void undo() {
+        unmakeMove();
+    }
+
+    /**
+     * Take back the last move made, restoring the position, turn, and win
+     * status from its undo record in constant time.  Has no effect if
+     * there are no moves to undo.
+     */
+    void unmakeMove() {
+        if (_undoSize == 0) {
+            return;
+        }
+        _undoSize -= 1;
+        int record = _undo[_undoSize];
+        _turn = _turn.opponent();
+        _hash ^= ZOBRIST_WHITE_TO_MOVE;
+        if ((record & UNDO_NULL) != 0) {
+            return;
+        }
+        _history.pop();
+        _moveCount--;
+        int from = record & UNDO_SQUARE_MASK,
+            to = (record >>> UNDO_TO_SHIFT) & UNDO_SQUARE_MASK,
+            captures = record >>> UNDO_CAPTURE_SHIFT;
+        Piece mover = get(to);
+        if ((captures & CAPTURE_DIRS) != 0) {
+            Piece victim = mover.side() == WHITE ? BLACK : WHITE;
+            for (int dir = 0; dir < 4; dir += 1) {
+                if ((captures & (1 << dir)) != 0) {
+                    put(victim, NEIGHBOR[4 * to + dir]);
+                }
+            }
+            if ((captures & CAPTURED_KING) != 0) {
+                int dir = (captures >>> KING_DIR_SHIFT) & 3;
+                put(KING, NEIGHBOR[4 * to + dir]);
+            }
+        }
+        if ((record & UNDO_MOVED) != 0) {
+            put(EMPTY, to);
+            put(mover, from);
+        }
+        _winner = PIECES[(record >>> UNDO_WINNER_SHIFT) & 3];
+        _repeated = (record & UNDO_REPEATED) != 0;
     }
 
     /**
@@ -439,57 +742,212 @@ class Board {
      * current position or win status.
      */
     void clearUndo() {
-        _encoded = new ArrayList<String>();
+        _hash = computeHash();
+        _history.clear();
+        _history.push(_hash);
+        _undoSize = 0;
         _moveCount = 0;
         _repeated = false;
     }
 
     /**
-     * and @param s and.
-     */
-    void decode(String s) {
-        for (int i = 1; i < s.length(); i++) {
-            int row = (i - 1) / SIZE;
-            int column = (i - 1) % SIZE;
-            switch (s.charAt(i)) {
-            case 'K':
-                _board[column][row] = KING;
-                break;
-            case '-':
-                _board[column][row] = EMPTY;
-                break;
-            case 'W':
-                _board[column][row] = WHITE;
-                break;
-            case 'B':
-                _board[column][row] = BLACK;
-                break;
-            default:
-            }
+     * Return a new mutable list of all legal moves on the current board for
+     * SIDE (ignoring whose turn it is at the moment).
+     */
+    List<Move> legalMoves(Piece side) {
+        int[] moves = new int[MAX_MOVES];
+        int n = legalMoves(side, moves);
+        List<Move> sideMove = new ArrayList<Move>(n);
+        for (int i = 0; i < n; i += 1) {
+            sideMove.add(mv(moves[i]));
         }
+        return sideMove;
     }
 
     /**
-     * Return a new mutable list of all legal moves on the current board for
-     * SIDE (ignoring whose turn it is at the moment).
+     * Store all legal moves on the current board for SIDE (ignoring whose
+     * turn it is) into MOVES, packed as by Move.pack, and return their
+     * number.  MOVES must have room for MAX_MOVES moves.  Allocates
+     * nothing, and produces the moves in the same order as
+     * legalMoves(SIDE).  If Events are enabled, calls in about one
+     * position in GENERATION_SAMPLE_INTERVAL, chosen by the low bits of
+     * its hash, are timed by a MoveGenerationEvent.
      */
-    List<Move> legalMoves(Piece side) {
-        List<Move> sideMove = new ArrayList<Move>();
-        HashSet<Square> locations = pieceLocations(side);
-        for (Square from : locations) {
+    int legalMoves(Piece side, int[] moves) {
+        if (!Events.enabled()
+            || (_hash & (GENERATION_SAMPLE_INTERVAL - 1)) != 0) {
+            return generateMoves(side, moves);
+        }
+        MoveGenerationEvent event = new MoveGenerationEvent();
+        event.begin();
+        int n = generateMoves(side, moves);
+        event.end();
+        if (event.shouldCommit()) {
+            event.moves = n;
+            event.commit();
+        }
+        return n;
+    }
+
+    /** Calls of legalMoves(Piece, int[]) are timed in about one position
+     *  in this many (a power of 2). */
+    static final int GENERATION_SAMPLE_INTERVAL = 1024;
+
+    /**
+     * Store all legal moves for SIDE into MOVES and return their number,
+     * as for legalMoves(SIDE, MOVES).
+     */
+    private int generateMoves(Piece side, int[] moves) {
+        long occLo = occupiedLo(), occHi = occupiedHi();
+        long piecesLo, piecesHi;
+        if (side == BLACK) {
+            piecesLo = _lo[BLACK_BITS];
+            piecesHi = _hi[BLACK_BITS];
+        } else {
+            piecesLo = _lo[WHITE_BITS] | _lo[KING_BITS];
+            piecesHi = _hi[WHITE_BITS] | _hi[KING_BITS];
+        }
+        int throne = THRONE.index(), n = 0;
+        int king = first(_lo[KING_BITS], _hi[KING_BITS]);
+        for (int from = first(piecesLo, piecesHi); from >= 0;
+             from = first(piecesLo, piecesHi)) {
+            piecesLo &= ~Bits.lo(from);
+            piecesHi &= ~Bits.hi(from);
             for (int dir = 0; dir < 4; dir++) {
-                for (Square sq : ROOK_SQUARES[from.index()][dir]) {
-                    if (get(sq) != EMPTY) {
-                        break;
+                int step = STEP[dir],
+                    stop = blocker(from, dir, occLo, occHi);
+                for (int to = from + step; to != stop; to += step) {
+                    if (to != throne || from == king) {
+                        moves[n] = Move.pack(from, to);
+                        n += 1;
                     }
-                    Move move = mv(from, sq);
-                    if (move != null && isLegal(move)) {
-                        sideMove.add(move);
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Store the legal moves for SIDE that capture at least one piece into
+     * MOVES, packed as by Move.pack, and return their number.  MOVES must
+     * have room for MAX_MOVES moves.  The captures are decided by the same
+     * rules as makeMove (see captures).  Allocates nothing.
+     */
+    int captureMoves(Piece side, int[] moves) {
+        long occLo = occupiedLo(), occHi = occupiedHi();
+        long victimsLo, victimsHi, hostileLo, hostileHi, piecesLo, piecesHi;
+        int throne = THRONE.index();
+        boolean throneEmpty = !has(occLo, occHi, throne);
+        if (side == BLACK) {
+            piecesLo = _lo[BLACK_BITS];
+            piecesHi = _hi[BLACK_BITS];
+            victimsLo = _lo[WHITE_BITS] | _lo[KING_BITS];
+            victimsHi = _hi[WHITE_BITS] | _hi[KING_BITS];
+            hostileLo = piecesLo;
+            hostileHi = piecesHi;
+            if (throneEmpty || count(piecesLo & ADJ_LO[throne],
+                                     piecesHi & ADJ_HI[throne]) >= 3) {
+                hostileLo |= Bits.lo(throne);
+                hostileHi |= Bits.hi(throne);
+            }
+        } else {
+            piecesLo = _lo[WHITE_BITS] | _lo[KING_BITS];
+            piecesHi = _hi[WHITE_BITS] | _hi[KING_BITS];
+            victimsLo = _lo[BLACK_BITS];
+            victimsHi = _hi[BLACK_BITS];
+            hostileLo = piecesLo;
+            hostileHi = piecesHi;
+            if (throneEmpty) {
+                hostileLo |= Bits.lo(throne);
+                hostileHi |= Bits.hi(throne);
+            }
+        }
+        long targetsLo = 0, targetsHi = 0;
+        int king = first(_lo[KING_BITS], _hi[KING_BITS]);
+        for (int v = first(victimsLo, victimsHi); v >= 0;
+             v = first(victimsLo, victimsHi)) {
+            victimsLo &= ~Bits.lo(v);
+            victimsHi &= ~Bits.hi(v);
+            if (v == king && has(THRONE_AREA_LO, THRONE_AREA_HI, v)) {
+                targetsLo |= ADJ_LO[v];
+                targetsHi |= ADJ_HI[v];
+                continue;
+            }
+            for (int dir = 0; dir < 4; dir += 1) {
+                int far = NEIGHBOR[4 * v + dir],
+                    near = NEIGHBOR[4 * v + (dir ^ 2)];
+                if (far >= 0 && near >= 0 && has(hostileLo, hostileHi, far)) {
+                    targetsLo |= Bits.lo(near);
+                    targetsHi |= Bits.hi(near);
+                }
+            }
+        }
+        targetsLo &= ~occLo;
+        targetsHi &= ~occHi;
+        int n = 0;
+        if ((targetsLo | targetsHi) == 0) {
+            return n;
+        }
+        for (int from = first(piecesLo, piecesHi); from >= 0;
+             from = first(piecesLo, piecesHi)) {
+            piecesLo &= ~Bits.lo(from);
+            piecesHi &= ~Bits.hi(from);
+            for (int dir = 0; dir < 4; dir++) {
+                int step = STEP[dir],
+                    stop = blocker(from, dir, occLo, occHi);
+                for (int to = from + step; to != stop; to += step) {
+                    if (has(targetsLo, targetsHi, to)
+                        && (to != throne || from == king)
+                        && captures(from, to) != 0) {
+                        moves[n] = Move.pack(from, to);
+                        n += 1;
                     }
                 }
             }
         }
-        return sideMove;
+        return n;
+    }
+
+    /**
+     * Store the legal king moves that reach the edge, or a square with a
+     * clear line to the edge, into MOVES starting at position START, and
+     * return the new number of moves in MOVES.  These are the king moves
+     * that win or threaten to win at once.
+     */
+    int kingRunMoves(int[] moves, int start) {
+        int king = first(_lo[KING_BITS], _hi[KING_BITS]), n = start;
+        if (king < 0) {
+            return n;
+        }
+        long occLo = occupiedLo() & ~Bits.lo(king),
+            occHi = occupiedHi() & ~Bits.hi(king);
+        for (int dir = 0; dir < 4; dir++) {
+            int step = STEP[dir],
+                stop = blocker(king, dir, occLo, occHi);
+            for (int to = king + step; to != stop; to += step) {
+                if (has(EDGE_LO, EDGE_HI, to) || openToEdge(to, occLo, occHi)) {
+                    moves[n] = Move.pack(king, to);
+                    n += 1;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Return true iff some rook move from the square with index SQ reaches
+     * the edge of the board, given that the occupied squares are the set
+     * OCCLO, OCCHI.
+     */
+    private static boolean openToEdge(int sq, long occLo, long occHi) {
+        for (int dir = 0; dir < 4; dir += 1) {
+            int k = 4 * sq + dir;
+            if ((RAY_LO[k] | RAY_HI[k]) != 0
+                && (RAY_LO[k] & occLo) == 0 && (RAY_HI[k] & occHi) == 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -532,22 +990,9 @@ class Board {
     }
 
     /**
-     * Return the locations of all pieces on SIDE.
-     */
-    private HashSet<Square> pieceLocations(Piece side) {
-        assert side != EMPTY;
-        HashSet<Square> pieceLoc = new HashSet<Square>();
-        for (Square s : SQUARE_LIST) {
-            if (get(s.col(), s.row()).side() == side) {
-                pieceLoc.add(s);
-            }
-        }
-        return pieceLoc;
-    }
-
-    /**
-     * Return the contents of _board in the order of SQUARE_LIST as a sequence
-     * of characters: the toString values of the current turn and Pieces.
+     * Return the contents of the board in the order of SQUARE_LIST as a
+     * sequence of characters: the toString values of the current turn and
+     * Pieces.
      */
     String encodedBoard() {
         char[] result = new char[Square.SQUARE_LIST.size() + 1];
@@ -580,10 +1025,29 @@ class Board {
     private boolean _repeated;
 
     /**
-     * and @return Piece[][].
+     * Return a new array holding the contents of the board, indexed by
+     * column and row.
      */
     public Piece[][] getBoard() {
-        return _board;
+        Piece[][] result = new Piece[SIZE][SIZE];
+        for (Square s : SQUARE_LIST) {
+            result[s.col()][s.row()] = get(s);
+        }
+        return result;
+    }
+
+    /**
+     * Return the low word of the set of occupied squares.
+     */
+    long occupiedLo() {
+        return _lo[WHITE_BITS] | _lo[BLACK_BITS] | _lo[KING_BITS];
+    }
+
+    /**
+     * Return the high word of the set of occupied squares.
+     */
+    long occupiedHi() {
+        return _hi[WHITE_BITS] | _hi[BLACK_BITS] | _hi[KING_BITS];
     }
 
     /**
@@ -594,26 +1058,147 @@ class Board {
     }
 
     /**
-     * .
+     * Seed for the Zobrist keys, fixed so that hash keys are the same in
+     * every run.
      */
-    private Piece[][] _board;
+    private static final long ZOBRIST_SEED = 0x7AB1D7L;
 
     /**
-     * and @return List<String>.
+     * ZOBRIST[p * NUM_SQUARES + i] is the random key for Piece with ordinal
+     * p on the square with index i.  The hash of a position is the
+     * exclusive or of the keys of its pieces, and of ZOBRIST_WHITE_TO_MOVE
+     * when it is white's turn.
      */
+    private static final long[] ZOBRIST = new long[4 * NUM_SQUARES];
 
-    public List<String> getEncoded() {
-        return _encoded;
+    /**
+     * The hash key of white being the side to move.
+     */
+    private static final long ZOBRIST_WHITE_TO_MOVE;
+
+    static {
+        Random keys = new Random(ZOBRIST_SEED);
+        for (int i = NUM_SQUARES; i < ZOBRIST.length; i += 1) {
+            ZOBRIST[i] = keys.nextLong();
+        }
+        ZOBRIST_WHITE_TO_MOVE = keys.nextLong();
     }
 
     /**
-     * .
+     * Piece-square values, from white's point of view, for the evaluation
+     * in AI: PSQ[k * NUM_SQUARES + i] is the value of having a piece with
+     * ordinal k on the square with index i.  The king gains KING_EDGE_VALUE
+     * for each step it is nearer the edge than the centre is.  Black
+     * gains BLOCKADE_VALUE (so the values are negative) on the squares
+     * off the centre lines within two steps of the edge, from which it
+     * closes off the corners.  White soldiers' values are 0.
      */
-    private List<String> _encoded;
+    static final int[] PSQ = new int[4 * NUM_SQUARES];
+
     /**
-     * .
+     * Piece-square value parameters (see PSQ).
+     */
+    static final int KING_EDGE_VALUE = 10, BLOCKADE_VALUE = 5;
+
+    static {
+        int center = BOARD_SIZE / 2;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            int c = i % BOARD_SIZE, r = i / BOARD_SIZE;
+            int edge = Math.min(Math.min(c, r),
+                                Math.min(BOARD_SIZE - 1 - c,
+                                         BOARD_SIZE - 1 - r));
+            PSQ[KING.ordinal() * NUM_SQUARES + i] =
+                KING_EDGE_VALUE * (center - edge);
+            if (edge >= 1 && edge <= 2 && Math.abs(c - center) >= 2
+                && Math.abs(r - center) >= 2) {
+                PSQ[BLACK.ordinal() * NUM_SQUARES + i] = -BLOCKADE_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Indices into _lo and _hi of the set of each kind of piece.
+     */
+    private static final int WHITE_BITS = WHITE.ordinal(),
+        BLACK_BITS = BLACK.ordinal(), KING_BITS = KING.ordinal();
+
+    /**
+     * The squares holding each kind of piece, as 81-bit sets (see Bits)
+     * indexed by Piece ordinal.  _lo holds the low words and _hi the high
+     * words.  The entries for EMPTY are unused.
+     */
+    private final long[] _lo = new long[4], _hi = new long[4];
+
+    /**
+     * The sum of the piece-square values (see PSQ) of the pieces on the
+     * board, maintained by put.
+     */
+    private int _psq;
+
+    /**
+     * The number of black pieces adjacent to the king, maintained by put.
+     */
+    private int _kingAttackers;
+
+    /**
+     * Layout of the undo records in _undo.  Bits 0-6 hold the index of the
+     * square moved from and bits 7-13 that of the square moved to.  The
+     * capture record returned by capture starts at UNDO_CAPTURE_SHIFT.
+     * The previous winner's ordinal (0 for none) starts at
+     * UNDO_WINNER_SHIFT.  UNDO_REPEATED records the previous value of
+     * _repeated, UNDO_MOVED whether a piece was actually moved, and
+     * UNDO_NULL whether the record is of a null move, whose squares are
+     * both 0.
+     */
+    private static final int
+        UNDO_SQUARE_MASK = 0x7f,
+        UNDO_TO_SHIFT = 7,
+        UNDO_CAPTURE_SHIFT = 14,
+        UNDO_WINNER_SHIFT = 21,
+        UNDO_REPEATED = 1 << 23,
+        UNDO_MOVED = 1 << 24,
+        UNDO_NULL = 1 << 25;
+
+    /**
+     * Mask of the bits of a capture record (see captures) that mark the
+     * directions of captured pieces.
+     */
+    static final int CAPTURE_DIRS = 0xf;
+
+    /**
+     * Layout of the rest of a capture record.
+     */
+    private static final int
+        CAPTURED_KING = 1 << 4,
+        KING_DIR_SHIFT = 5;
+
+    /**
+     * Pieces by ordinal, with null in place of EMPTY, for decoding the
+     * winner in undo records.
+     */
+    private static final Piece[] PIECES = { null, WHITE, BLACK, KING };
+
+    /**
+     * Undo records for the moves since the last initialization, oldest
+     * first.  Only the first _undoSize entries are valid.
+     */
+    private int[] _undo = new int[256];
+
+    /**
+     * Number of records in _undo.
+     */
+    private int _undoSize;
+
+    /**
+     * The Zobrist hash key of the current position.
+     */
+    private long _hash;
+
+    /**
+     * Hash keys of the positions since the last initialization, ending
+     * with the current one.
      */
-    private Square _kingPosition;
+    private final PositionHistory _history = new PositionHistory();
     /**
      * .
      */
@@ -0,0 +1,312 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Piece.*;
+import static tablut.Square.sq;
+import static tablut.Move.mv;
+
+/** Tests of the Board class.
+ *  @author ANUJS
+ */
+public class BoardTest {
+
+    /** Return an empty board with BLACK to move. */
+    private Board emptyBoard() {
+        Board b = new Board();
+        for (Square s : Square.SQUARE_LIST) {
+            b.put(EMPTY, s);
+        }
+        b.clearUndo();
+        return b;
+    }
+
+    @Test
+    public void testInitialPosition() {
+        Board b = new Board();
+        assertEquals(16, b.pieceCount(BLACK));
+        assertEquals(8, b.pieceCount(WHITE));
+        assertEquals(1, b.pieceCount(KING));
+        assertSame(Board.THRONE, b.kingPosition());
+        assertSame(BLACK, b.turn());
+        assertEquals(80, b.legalMoves(BLACK).size());
+    }
+
+    @Test
+    public void testBlockedMoves() {
+        Board b = new Board();
+        assertTrue(b.isLegal(mv("a4-c")));
+        assertFalse(b.isLegal(mv("e1-3")));
+        assertFalse(b.isLegal(mv("a4-5")));
+        assertFalse(b.isLegal(mv("e6-7")));
+    }
+
+    @Test
+    public void testThroneIsKingOnly() {
+        Board b = emptyBoard();
+        b.put(BLACK, sq("e2"));
+        b.put(KING, sq("a1"));
+        assertFalse(b.isLegal(mv("e2-5")));
+        assertTrue(b.isLegal(mv("e2-6")));
+        for (Move m : b.legalMoves(BLACK)) {
+            assertNotSame(Board.THRONE, m.to());
+        }
+    }
+
+    @Test
+    public void testCapture() {
+        Board b = emptyBoard();
+        b.put(KING, sq("a9"));
+        b.put(WHITE, sq("c3"));
+        b.put(BLACK, sq("d3"));
+        b.put(BLACK, sq("b1"));
+        b.makeMove(mv("b1-3"));
+        assertSame(EMPTY, b.get(sq("c3")));
+        assertEquals(2, b.pieceCount(BLACK));
+    }
+
+    @Test
+    public void testKingCapturedOnThrone() {
+        Board b = emptyBoard();
+        b.put(KING, Board.THRONE);
+        b.put(BLACK, Board.NTHRONE);
+        b.put(BLACK, Board.ETHRONE);
+        b.put(BLACK, Board.STHRONE);
+        b.put(BLACK, sq("b5"));
+        b.makeMove(mv("b5-d"));
+        assertSame(BLACK, b.winner());
+        assertNull(b.kingPosition());
+    }
+
+    @Test
+    public void testKingEscape() {
+        Board b = emptyBoard();
+        b.put(KING, sq("c3"));
+        b.put(BLACK, sq("g7"));
+        b.makeMove(mv("g7-6"));
+        b.makeMove(mv("c3-1"));
+        assertSame(WHITE, b.winner());
+    }
+
+    @Test
+    public void testHashTranspositions() {
+        Board b1 = new Board(), b2 = new Board();
+        long initial = b1.hash();
+        for (String m : new String[] { "a4-b", "e3-d", "i6-h", "g5-7" }) {
+            b1.makeMove(mv(m));
+        }
+        for (String m : new String[] { "i6-h", "g5-7", "a4-b", "e3-d" }) {
+            b2.makeMove(mv(m));
+        }
+        assertEquals(b1.hash(), b2.hash());
+        b1.undo();
+        assertFalse(b1.hash() == b2.hash());
+        b1.undo();
+        b1.undo();
+        b1.undo();
+        assertEquals(initial, b1.hash());
+    }
+
+    @Test
+    public void testRepetition() {
+        Board b = new Board();
+        b.makeMove(mv("a4-b"));
+        b.makeMove(mv("e3-d"));
+        b.makeMove(mv("b4-a"));
+        assertFalse(b.repeatedPosition());
+        b.makeMove(mv("d3-e"));
+        assertTrue(b.repeatedPosition());
+        assertSame(BLACK, b.winner());
+    }
+
+    @Test
+    public void testUnmakeRestoresCaptures() {
+        Board b = emptyBoard();
+        b.put(KING, Board.NTHRONE);
+        b.put(BLACK, sq("d6"));
+        b.put(BLACK, sq("f6"));
+        b.put(BLACK, sq("h7"));
+        b.put(WHITE, sq("a9"));
+        b.put(WHITE, sq("c3"));
+        b.put(BLACK, sq("d3"));
+        b.put(BLACK, sq("b1"));
+        b.clearUndo();
+        String before = b.toString();
+        long hash = b.hash();
+        b.makeMove(mv("b1-3"));
+        assertSame(EMPTY, b.get(sq("c3")));
+        b.makeMove(mv("a9-8"));
+        assertNull(b.winner());
+        b.makeMove(mv("h7-e"));
+        assertSame(BLACK, b.winner());
+        assertNull(b.kingPosition());
+        b.unmakeMove();
+        b.unmakeMove();
+        b.unmakeMove();
+        assertEquals(before, b.toString());
+        assertEquals(hash, b.hash());
+        assertSame(Board.NTHRONE, b.kingPosition());
+        assertNull(b.winner());
+        assertSame(BLACK, b.turn());
+        assertEquals(0, b.moveCount());
+    }
+
+    /** Check that the evaluation terms kept by B agree with those of a
+     *  board built afresh with the same pieces. */
+    private void checkEvaluationTerms(Board b) {
+        Board fresh = emptyBoard();
+        for (Square s : Square.SQUARE_LIST) {
+            fresh.put(b.get(s), s);
+        }
+        assertEquals(fresh.psqScore(), b.psqScore());
+        assertEquals(fresh.kingAttackers(), b.kingAttackers());
+    }
+
+    @Test
+    public void testIncrementalEvaluation() {
+        Random random = new Random(61);
+        Board b = new Board();
+        for (int game = 0; game < 20; game += 1) {
+            b.init();
+            int plies = 0;
+            while (b.winner() == null) {
+                List<Move> moves = b.legalMoves(b.turn());
+                b.makeMove(moves.get(random.nextInt(moves.size())));
+                plies += 1;
+                checkEvaluationTerms(b);
+            }
+            for (; plies > 0; plies -= 1) {
+                b.unmakeMove();
+                checkEvaluationTerms(b);
+            }
+        }
+    }
+
+    /** Check the analysis of the king's escapes on B against a direct
+     *  search of the king's rook moves. */
+    private void checkEscapes(Board b) {
+        Escapes escapes = new Escapes();
+        escapes.analyze(b);
+        Square k = b.kingPosition();
+        if (k == null || k.isEdge()) {
+            return;
+        }
+        assertEquals(b.kingEscapeLines(), escapes.direct());
+        Set<Square> twoMove = new HashSet<>();
+        boolean fork = false;
+        for (int i = 0; i < 9; i += 1) {
+            Square[] firsts = { sq(k.col(), i), sq(i, k.row()) };
+            for (int j = 0; j < 2; j += 1) {
+                Square s = firsts[j];
+                if (s == k || s.isEdge() || !b.isUnblockedMove(k, s)) {
+                    continue;
+                }
+                Square[] ends = j == 0
+                    ? new Square[] { sq(0, i), sq(8, i) }
+                    : new Square[] { sq(i, 0), sq(i, 8) };
+                int open = 0;
+                for (Square end : ends) {
+                    if (b.isUnblockedMove(s, end)) {
+                        open += 1;
+                        twoMove.add(end);
+                    }
+                }
+                assertEquals(open > 0, escapes.threatens(s.index()));
+                assertEquals(open > 1, escapes.forks(s.index()));
+                fork |= open > 1;
+            }
+        }
+        for (Square end : new Square[] {
+                sq(k.col(), 0), sq(k.col(), 8),
+                sq(0, k.row()), sq(8, k.row()) }) {
+            if (b.isUnblockedMove(k, end)) {
+                twoMove.remove(end);
+            }
+        }
+        assertEquals(twoMove.size(), escapes.twoMove());
+        assertEquals(fork, escapes.fork());
+    }
+
+    @Test
+    public void testEscapes() {
+        Random random = new Random(5);
+        Board b = new Board();
+        for (int game = 0; game < 50; game += 1) {
+            b.init();
+            while (b.winner() == null) {
+                List<Move> moves = b.legalMoves(b.turn());
+                b.makeMove(moves.get(random.nextInt(moves.size())));
+                checkEscapes(b);
+            }
+        }
+    }
+
+    @Test
+    public void testNullMove() {
+        Board b = new Board();
+        b.makeMove(mv("a4-b"));
+        long hash = b.hash();
+        b.makeNullMove();
+        assertSame(BLACK, b.turn());
+        assertTrue(hash != b.hash());
+        assertEquals(0, b.lastMove());
+        b.makeMove(mv("i6-h"));
+        b.unmakeMove();
+        b.unmakeMove();
+        assertSame(WHITE, b.turn());
+        assertEquals(hash, b.hash());
+        assertEquals(1, b.moveCount());
+        assertEquals(Move.mv("a4-b").packed(), b.lastMove());
+    }
+
+    @Test
+    public void testPackedMoves() {
+        Board b = new Board();
+        b.makeMove(mv("a4-b"));
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = b.legalMoves(WHITE, moves);
+        List<Move> list = b.legalMoves(WHITE);
+        assertEquals(list.size(), n);
+        for (int i = 0; i < n; i += 1) {
+            assertSame(list.get(i), Move.mv(moves[i]));
+            assertEquals(moves[i], list.get(i).packed());
+        }
+    }
+
+    /** Return a random key from a small set whose members all fall in the
+     *  first or last slot of a PositionHistory's table, so that its
+     *  clusters collide and wrap around. */
+    private long historyKey(Random random) {
+        return ((long) random.nextInt(32) << 20)
+            | (random.nextBoolean() ? 0xfffff : 0);
+    }
+
+    @Test
+    public void testPositionHistory() {
+        Random random = new Random(17);
+        PositionHistory history = new PositionHistory();
+        List<Long> stack = new ArrayList<>();
+        history.reserve(1000);
+        for (int step = 0; step < 100000; step += 1) {
+            if (stack.isEmpty() || random.nextInt(3) != 0) {
+                long key = historyKey(random);
+                history.push(key);
+                stack.add(key);
+            } else {
+                assertEquals((long) stack.remove(stack.size() - 1),
+                             history.pop());
+            }
+            long probe = historyKey(random);
+            assertEquals(stack.contains(probe), history.contains(probe));
+            assertEquals(stack.size(), history.size());
+        }
+    }
+
+}
@@ -0,0 +1,318 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import static tablut.Utils.*;
+
+/** An opening book: for positions reached early in recorded games, the
+ *  moves played from them, each with a weight and the number of games
+ *  the side that played it won, drew (left unfinished), and lost.
+ *
+ *  A book file holds an 8-byte header (MAGIC and the number of entries)
+ *  followed by the entries, ENTRY_SIZE bytes each: the Board.hash of a
+ *  position (a long), then a packed move, its weight, and its wins,
+ *  draws, and losses (ints).  The entries are sorted by hash, as signed
+ *  longs, and then by decreasing weight.  Files are read by mapping them
+ *  into memory and are probed by binary search in place, so that opening
+ *  one costs nothing however large it is.
+ *
+ *  Books are built from the command logs that Controller writes with
+ *  --log.  Only games played from the initial position count, and only
+ *  their first few moves; a move's weight is 2 for each game its side won
+ *  and 1 for each it drew.
+ *  @author ANUJS
+ */
+final class Book {
+
+    /** Default number of plies of each game recorded by build. */
+    static final int DEFAULT_PLIES = 20;
+
+    /** The first four bytes of a book file ("TBOK"). */
+    private static final int MAGIC = 0x54424f4b;
+
+    /** Size of a file's header in bytes. */
+    private static final int HEADER_SIZE = 8;
+
+    /** Size of an entry in bytes. */
+    private static final int ENTRY_SIZE = 28;
+
+    /** Return the book in the file named FILE, which is mapped into
+     *  memory. */
+    static Book open(String file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer data =
+                in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                                    in.length());
+            return new Book(data, file);
+        }
+    }
+
+    /** The book held in DATA, read from the file named NAME. */
+    private Book(MappedByteBuffer data, String name) {
+        if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw error("%s is not a book file", name);
+        }
+        _size = data.getInt(4);
+        if (_size < 0
+            || data.capacity() != HEADER_SIZE + (long) _size * ENTRY_SIZE) {
+            throw error("book file %s is truncated", name);
+        }
+        _data = data;
+    }
+
+    /** Return my number of entries. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the total weight of my moves from the position on BOARD
+     *  that are legal there, or 0 if I have none. */
+    int weight(Board board) {
+        int total = 0;
+        for (int i = first(board.hash()); matches(i, board); i += 1) {
+            if (board.isLegal(move(i))) {
+                total += weight(i);
+            }
+        }
+        return total;
+    }
+
+    /** Return the move from the position on BOARD that I choose given a
+     *  number R in the range 0 inclusive to weight(BOARD) exclusive: each
+     *  move is chosen for a range of R as long as its weight.  R = 0
+     *  chooses the heaviest.  Returns 0 if there is no such move. */
+    int choose(Board board, int r) {
+        for (int i = first(board.hash()); matches(i, board); i += 1) {
+            if (board.isLegal(move(i))) {
+                r -= weight(i);
+                if (r < 0) {
+                    return move(i);
+                }
+            }
+        }
+        return 0;
+    }
+
+    /** Return the index of my first entry whose hash is not less than
+     *  KEY. */
+    private int first(long key) {
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (hash(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return true iff entry I exists and is for the position on
+     *  BOARD. */
+    private boolean matches(int i, Board board) {
+        return i < _size && hash(i) == board.hash();
+    }
+
+    /** Return the hash of entry I. */
+    private long hash(int i) {
+        return _data.getLong(HEADER_SIZE + i * ENTRY_SIZE);
+    }
+
+    /** Return the packed move of entry I. */
+    private int move(int i) {
+        return _data.getInt(HEADER_SIZE + i * ENTRY_SIZE + 8);
+    }
+
+    /** Return the weight of entry I. */
+    private int weight(int i) {
+        return _data.getInt(HEADER_SIZE + i * ENTRY_SIZE + 12);
+    }
+
+    /** Build a book from the first PLIES plies of the games in the
+     *  command logs named in LOGS, each a file or a directory of files,
+     *  write it to the file named FILE, and report its size on LOG. */
+    static void build(List<String> logs, int plies, String file,
+                      PrintStream log) throws IOException {
+        Builder builder = new Builder(plies);
+        for (String name : logs) {
+            File path = new File(name);
+            File[] files = path.isDirectory() ? path.listFiles()
+                : new File[] { path };
+            if (files == null) {
+                throw error("could not list %s", name);
+            }
+            Arrays.sort(files);
+            for (File f : files) {
+                if (f.isFile()) {
+                    try (Scanner in = new Scanner(new FileInputStream(f))) {
+                        builder.read(in);
+                    }
+                }
+            }
+        }
+        long[][] entries = builder.entries();
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(entries.length);
+            for (long[] entry : entries) {
+                out.writeLong(entry[0]);
+                for (int k = 1; k < entry.length; k += 1) {
+                    out.writeInt((int) entry[k]);
+                }
+            }
+        }
+        log.printf("%d games, %d positions, %d moves%n", builder.games(),
+                   builder.positions(), entries.length);
+    }
+
+    /** Gathers the statistics of the games in command logs. */
+    private static class Builder {
+
+        /** A Builder that records the first PLIES plies of each game. */
+        Builder(int plies) {
+            _plies = plies;
+            _keys = new long[plies];
+            _moves = new int[plies];
+        }
+
+        /** Replay the commands read from IN as Controller would, recording
+         *  the games they contain. */
+        void read(Scanner in) {
+            _board.init();
+            _recorded = 0;
+            _standard = true;
+            while (in.hasNextLine()) {
+                String cmnd =
+                    in.nextLine().replaceFirst("#.*", "").trim()
+                    .toLowerCase();
+                if (cmnd.equals("new")) {
+                    endGame();
+                    _board.init();
+                    _standard = true;
+                } else if (cmnd.equals("quit")) {
+                    break;
+                } else if (cmnd.equals("undo")) {
+                    if (_board.moveCount() > 1) {
+                        _board.undo();
+                        _board.undo();
+                        _recorded = Math.min(_recorded, _board.moveCount());
+                    }
+                } else if (cmnd.startsWith("toggle")) {
+                    _standard = false;
+                } else if (Move.MOVE_PATTERN.matcher(cmnd).matches()) {
+                    Move move = Move.mv(cmnd);
+                    if (move != null && _board.winner() == null
+                        && _board.isLegal(move)) {
+                        if (_standard && _recorded < _plies
+                            && _recorded == _board.moveCount()) {
+                            _keys[_recorded] = _board.hash();
+                            _moves[_recorded] = move.packed();
+                            _recorded += 1;
+                        }
+                        _board.makeMove(move);
+                    }
+                }
+            }
+            endGame();
+        }
+
+        /** Record the result of the current game, if it was played from
+         *  the initial position, for the moves recorded from it. */
+        private void endGame() {
+            if (!_standard || _recorded == 0) {
+                _recorded = 0;
+                return;
+            }
+            _games += 1;
+            Piece winner = _board.winner();
+            for (int k = 0; k < _recorded; k += 1) {
+                Map<Integer, int[]> moves =
+                    _stats.computeIfAbsent(_keys[k], x -> new HashMap<>());
+                int[] stats =
+                    moves.computeIfAbsent(_moves[k], x -> new int[3]);
+                Piece mover = k % 2 == 0 ? Piece.BLACK : Piece.WHITE;
+                if (winner == null) {
+                    stats[1] += 1;
+                } else if (winner == mover) {
+                    stats[0] += 1;
+                } else {
+                    stats[2] += 1;
+                }
+            }
+            _recorded = 0;
+        }
+
+        /** Return the entries gathered so far in the order of a book
+         *  file, each as {hash, move, weight, wins, draws, losses}. */
+        long[][] entries() {
+            List<long[]> result = new ArrayList<>();
+            for (Map.Entry<Long, Map<Integer, int[]>> position
+                     : _stats.entrySet()) {
+                for (Map.Entry<Integer, int[]> move
+                         : position.getValue().entrySet()) {
+                    int[] stats = move.getValue();
+                    result.add(new long[] {
+                        position.getKey(), move.getKey(),
+                        2 * stats[0] + stats[1], stats[0], stats[1], stats[2]
+                    });
+                }
+            }
+            result.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0])
+                        : a[2] != b[2] ? Long.compare(b[2], a[2])
+                        : Long.compare(a[1], b[1]));
+            return result.toArray(new long[result.size()][]);
+        }
+
+        /** Return the number of games recorded. */
+        int games() {
+            return _games;
+        }
+
+        /** Return the number of distinct positions recorded. */
+        int positions() {
+            return _stats.size();
+        }
+
+        /** Number of plies recorded per game. */
+        private final int _plies;
+        /** The positions and moves recorded from the current game:
+         *  _moves[k] was played from the position with hash _keys[k]. */
+        private final long[] _keys;
+        /** See _keys. */
+        private final int[] _moves;
+        /** Number of plies recorded from the current game. */
+        private int _recorded;
+        /** True iff the current game started from the initial position. */
+        private boolean _standard;
+        /** Number of games recorded. */
+        private int _games;
+        /** For each position hash and packed move, the wins, draws, and
+         *  losses of the side that played it. */
+        private final Map<Long, Map<Integer, int[]>> _stats = new HashMap<>();
+        /** The position of the current game. */
+        private final Board _board = new Board();
+    }
+
+    /** Number of entries. */
+    private final int _size;
+    /** The contents of my file. */
+    private final MappedByteBuffer _data;
+}
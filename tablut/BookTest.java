@@ -0,0 +1,69 @@
+package tablut;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Move.mv;
+
+/** Tests of the Book class.
+ *  @author ANUJS
+ */
+public class BookTest {
+
+    /** Write LINES to a file named NAME in DIR. */
+    private void writeLog(File dir, String name, String... lines)
+        throws IOException {
+        File log = new File(dir, name);
+        log.deleteOnExit();
+        Files.write(log.toPath(), List.of(lines));
+    }
+
+    @Test
+    public void testBuildAndProbe() throws IOException {
+        File dir = Files.createTempDirectory("tablut-logs").toFile();
+        dir.deleteOnExit();
+        writeLog(dir, "game1.log",
+                 "a4-b", "e3-d", "quit");
+        writeLog(dir, "game2.log",
+                 "a4-b", "e3-f", "undo", "d1-c  # replaces a4-b",
+                 "new", "toggle e5", "a4-b", "quit");
+        writeLog(dir, "game3.log",
+                 "a4-b", "e3-d", "b4-a", "d3-e", "b4-a");
+        File file = File.createTempFile("tablut", ".book");
+        file.deleteOnExit();
+        Book.build(List.of(dir.getPath()), Book.DEFAULT_PLIES,
+                   file.getPath(),
+                   new PrintStream(OutputStream.nullOutputStream()));
+        Book book = Book.open(file.getPath());
+        assertEquals(5, book.size());
+
+        Board b = new Board();
+        assertEquals(4, book.weight(b));
+        assertEquals(mv("a4-b").packed(), book.choose(b, 0));
+        assertEquals(mv("a4-b").packed(), book.choose(b, 2));
+        assertEquals(mv("d1-c").packed(), book.choose(b, 3));
+        assertEquals(0, book.choose(b, 4));
+
+        b.makeMove(mv("a4-b"));
+        assertEquals(1, book.weight(b));
+        assertEquals(mv("e3-d").packed(), book.choose(b, 0));
+        b.makeMove(mv("e3-d"));
+        assertEquals(2, book.weight(b));
+        assertEquals(mv("b4-a").packed(), book.choose(b, 0));
+        b.makeMove(mv("b4-a"));
+        assertEquals(0, book.weight(b));
+        assertEquals(0, book.choose(b, 0));
+
+        b = new Board();
+        b.makeMove(mv("d1-c"));
+        assertEquals(0, book.weight(b));
+    }
+
+}
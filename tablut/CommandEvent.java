@@ -0,0 +1,30 @@
+package tablut;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A Java Flight Recorder event for the execution of one command by a
+ *  Controller, whether it came from the input or from a player.  As in
+ *  all JFR events, the fields are named as they appear in recordings.
+ *  @author ANUJS
+ */
+@Name("tablut.Command")
+@Label("Command")
+@Category("Tablut")
+@Description("Execution of a controller command")
+@StackTrace(false)
+final class CommandEvent extends Event {
+
+    /** The kind of command: "move" for moves, and otherwise its first
+     *  word (empty for blank lines and comments). */
+    @Label("Kind")
+    String kind;
+
+    /** True iff the command was rejected as erroneous. */
+    @Label("Failed")
+    boolean failed;
+}
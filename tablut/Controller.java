@@ -1,11 +1,14 @@
 package tablut;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static tablut.Utils.*;
 import static tablut.Square.*;
@@ -19,7 +22,9 @@ final class Controller {
     /** Controller for one or more games of Tablut, using
      *  MANUALPLAYERTEMPLATE as an exemplar for manual players
      *  (see the Player.create method) and AUTOPLAYERTEMPLATE
-     *  as an exemplar for automated players.  Reports
+     *  as an exemplar for automated players.  ENGINES maps the names
+     *  that the auto command accepts to suppliers of other exemplars,
+     *  which are asked for them only when the names are used.  Reports
      *  board changes to VIEW at appropriate points.  Uses REPORTER
      *  to report moves, wins, and errors to user. If LOGFILE is
      *  non-null, copies all commands to it. If STRICT, exits the
@@ -27,12 +32,13 @@ final class Controller {
      *  player. */
     Controller(View view, PrintStream logFile, Reporter reporter,
                Player manualPlayerTemplate, Player autoPlayerTemplate,
-               boolean strict) {
+               Map<String, Supplier<Player>> engines, boolean strict) {
         _view = view;
         _playing = false;
         _logFile = logFile;
         _input = new Scanner(System.in);
         _autoPlayerTemplate = autoPlayerTemplate;
+        _engines = engines;
         _manualPlayerTemplate = manualPlayerTemplate;
         _nonPlayer = manualPlayerTemplate.create(EMPTY, this);
         _white = _autoPlayerTemplate.create(WHITE, this);
@@ -172,8 +178,10 @@ final class Controller {
         new Command("dump$", this::doDump),
         new Command("undo$", this::doUndo),
         new Command("manual\\s+(white|black)$", this::doManual),
-        new Command("auto\\s+(white|black)$", this::doAuto),
+        new Command("auto\\s+(white|black)(?:\\s+(\\w+))?$", this::doAuto),
         new Command("limit\\s+(\\d+)$", this::doLimit),
+        new Command("perft\\s+(\\d+)(\\s+divide)?$", this::doPerft),
+        new Command("bench(?:\\s+(\\d+))?$", this::doBench),
         new Command("toggle\\s+" + SQ + "$", this::doToggle),
         new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
     };
@@ -182,8 +190,41 @@ final class Controller {
     private static final Matcher COMMENT = Pattern.compile("#.*").matcher("");
 
     /** Check that CMND is one of the valid Tablut commands and execute it, if
-     *  so, raising an IllegalArgumentException otherwise. */
+     *  so, raising an IllegalArgumentException otherwise.  If Events are
+     *  enabled, each command is timed by a CommandEvent. */
     private void executeCommand(String cmnd) {
+        if (!Events.enabled()) {
+            runCommand(cmnd);
+            return;
+        }
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        boolean failed = true;
+        try {
+            runCommand(cmnd);
+            failed = false;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.kind = commandKind(cmnd);
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    /** Return the kind of the command CMND for a CommandEvent: "move" for
+     *  a move, and otherwise its first word, or "" if it is blank. */
+    private static String commandKind(String cmnd) {
+        String words = cmnd.replaceFirst("#.*", "").trim().toLowerCase();
+        if (Move.MOVE_PATTERN.matcher(words).matches()) {
+            return "move";
+        }
+        return words.split("\\s+", 2)[0];
+    }
+
+    /** Execute CMND as for executeCommand. */
+    private void runCommand(String cmnd) {
         if (_logFile != null) {
             _logFile.println(cmnd);
             _logFile.flush();
@@ -207,6 +248,7 @@ final class Controller {
 
     /** Command "new". */
     private void doNew(Matcher unused) {
+        stopPondering();
         _board.init();
         _winner = null;
     }
@@ -215,9 +257,11 @@ final class Controller {
     private void doManual(Matcher color) {
         switch (color.group(1)) {
         case "black":
+            _black.stopPondering();
             _black = _manualPlayerTemplate.create(BLACK, this);
             break;
         case "white":
+            _white.stopPondering();
             _white = _manualPlayerTemplate.create(WHITE, this);
             break;
         default:
@@ -226,14 +270,25 @@ final class Controller {
         _view.update(this);
     }
 
-    /** Command "auto <color>", where <color> is COLOR.group(1). */
+    /** Command "auto <color> [<engine>]", where <color> is COLOR.group(1)
+     *  and <engine>, if present, is COLOR.group(2). */
     private void doAuto(Matcher color) {
+        Player template = _autoPlayerTemplate;
+        if (color.group(2) != null) {
+            Supplier<Player> engine = _engines.get(color.group(2));
+            if (engine == null) {
+                throw error("Unknown engine: %s", color.group(2));
+            }
+            template = engine.get();
+        }
         switch (color.group(1)) {
         case "black":
-            _black = _autoPlayerTemplate.create(BLACK, this);
+            _black.stopPondering();
+            _black = template.create(BLACK, this);
             break;
         case "white":
-            _white = _autoPlayerTemplate.create(WHITE, this);
+            _white.stopPondering();
+            _white = template.create(WHITE, this);
             break;
         default:
             assert false;
@@ -260,9 +315,16 @@ final class Controller {
 
     /** Command "quit". */
     private void doQuit(Matcher unused) {
+        stopPondering();
         _playing = false;
     }
 
+    /** Stop both players thinking on each other's time. */
+    private void stopPondering() {
+        _white.stopPondering();
+        _black.stopPondering();
+    }
+
     /** Command "seed N" where N is the first group of MAT. */
     private void doSeed(Matcher mat) {
         try {
@@ -281,12 +343,51 @@ final class Controller {
         }
     }
 
+    /** Command "perft N [divide]", where N is the first group of MAT and
+     *  the second is present for divide.  Counts the sequences of N moves
+     *  from the current position, and, with divide, those starting with
+     *  each legal move, using one thread per processor and no table of
+     *  subtree counts. */
+    private void doPerft(Matcher mat) {
+        int depth;
+        try {
+            depth = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (_perft == null) {
+            _perft = new Perft(Runtime.getRuntime().availableProcessors(), 0);
+        }
+        _perft.report(_board, depth, mat.group(2) != null, System.out);
+    }
+
+    /** Command "bench [N]", where N, if present, is the first group of
+     *  MAT.  Searches the standard position suite to depth N, or
+     *  Suite.BENCH_DEPTH, and reports the number of nodes and the speed
+     *  of the search (see Suite.bench). */
+    private void doBench(Matcher mat) {
+        int depth = Suite.BENCH_DEPTH;
+        if (mat.group(1) != null) {
+            try {
+                depth = Integer.parseInt(mat.group(1));
+            } catch (NumberFormatException excp) {
+                throw error("number too large");
+            }
+        }
+        try {
+            Suite.standard().bench(depth, System.out);
+        } catch (IOException excp) {
+            throw error("could not read suite: %s", excp.getMessage());
+        }
+    }
+
     /** Execute a move command matched in MAT. */
     private void doMove(Matcher mat) {
         _board.makeMove(Move.mv(mat.group(0)));
         if (_winner == null) {
             _winner = _board.winner();
             if (_winner != null) {
+                stopPondering();
                 _view.update(this);
                 _reporter.reportNote("%s wins.", _winner.toName());
             }
@@ -324,6 +425,10 @@ final class Controller {
     /** My pseudo-random number generator. */
     private Random _randGen = new Random();
 
+    /** Counter for the perft command, or null if it has not been
+     *  needed. */
+    private Perft _perft;
+
     /** Log file, or null if absent. */
     private PrintStream _logFile;
 
@@ -341,6 +446,10 @@ final class Controller {
     /** The current templates for manual and automated players. */
     private Player _autoPlayerTemplate, _manualPlayerTemplate;
 
+    /** Suppliers of exemplars for the automated players named in auto
+     *  commands. */
+    private Map<String, Supplier<Player>> _engines;
+
     /** Reporter for messages and errors. */
     private Reporter _reporter;
 
@@ -0,0 +1,122 @@
+package tablut;
+
+import static tablut.Bits.*;
+
+/** An analysis of the king's routes to the edge of a Board, for the
+ *  evaluation, move ordering, and search extensions of AI.  The corridor
+ *  from a square in a direction is the set of squares from it to the edge
+ *  (the rays of Bits); it is open when all are empty.  The king escapes
+ *  directly along an open corridor from its own square, and in two moves
+ *  along an open corridor from a square it can reach in one.  Only
+ *  corridors perpendicular to the first move need be considered, since a
+ *  parallel one would already be a direct escape.  An Escapes is reused
+ *  for many positions and never allocates after construction.
+ *  @author ANUJS
+ */
+final class Escapes {
+
+    /** Analyze the king's escapes on BOARD, replacing any previous
+     *  analysis.  If there is no king, there are no escapes. */
+    void analyze(Board board) {
+        _direct = _twoMove = 0;
+        _twoLo = _twoHi = _threatLo = _threatHi = _blockLo = _blockHi = 0;
+        _forkLo = _forkHi = 0;
+        int king = board.kingIndex();
+        if (king < 0) {
+            return;
+        }
+        long occLo = board.occupiedLo(), occHi = board.occupiedHi();
+        for (int dir = 0; dir < 4; dir += 1) {
+            int k = 4 * king + dir;
+            if (open(k, occLo, occHi)) {
+                _direct += 1;
+                _blockLo |= RAY_LO[k];
+                _blockHi |= RAY_HI[k];
+            }
+            int stop = blocker(king, dir, occLo, occHi);
+            long legLo = 0, legHi = 0;
+            for (int sq = king + STEP[dir]; sq != stop; sq += STEP[dir]) {
+                legLo |= lo(sq);
+                legHi |= hi(sq);
+                if (has(EDGE_LO, EDGE_HI, sq)) {
+                    continue;
+                }
+                int corridors = 0;
+                for (int turn = 1; turn < 4; turn += 2) {
+                    int m = 4 * sq + ((dir + turn) & 3);
+                    if (open(m, occLo, occHi)) {
+                        int edge = RAY_STOP[m] - STEP[(dir + turn) & 3];
+                        corridors += 1;
+                        _twoLo |= lo(edge);
+                        _twoHi |= hi(edge);
+                        _blockLo |= legLo | RAY_LO[m];
+                        _blockHi |= legHi | RAY_HI[m];
+                    }
+                }
+                if (corridors > 0) {
+                    _threatLo |= lo(sq);
+                    _threatHi |= hi(sq);
+                }
+                if (corridors > 1) {
+                    _forkLo |= lo(sq);
+                    _forkHi |= hi(sq);
+                }
+            }
+        }
+        _twoMove = count(_twoLo, _twoHi);
+    }
+
+    /** Return the number of edge squares the king can reach in one move. */
+    int direct() {
+        return _direct;
+    }
+
+    /** Return the number of edge squares the king can reach in two moves
+     *  but not in one.  (No perpendicular corridor ends on a square the
+     *  king reaches directly.) */
+    int twoMove() {
+        return _twoMove;
+    }
+
+    /** Return true iff the king can move to a square with two open
+     *  corridors, which the opponent cannot both close in one move. */
+    boolean fork() {
+        return (_forkLo | _forkHi) != 0;
+    }
+
+    /** Return true iff moving the king to the square with index SQ gives
+     *  it two open corridors. */
+    boolean forks(int sq) {
+        return has(_forkLo, _forkHi, sq);
+    }
+
+    /** Return true iff moving the king to the square with index SQ gives
+     *  it an open corridor. */
+    boolean threatens(int sq) {
+        return has(_threatLo, _threatHi, sq);
+    }
+
+    /** Return true iff a piece on the square with index SQ would block
+     *  one of the king's escape routes. */
+    boolean blocks(int sq) {
+        return has(_blockLo, _blockHi, sq);
+    }
+
+    /** Return true iff the corridor with index K (as for Bits.RAY_LO) is
+     *  nonempty and contains no square in OCCLO, OCCHI. */
+    private static boolean open(int k, long occLo, long occHi) {
+        return ((RAY_LO[k] | RAY_HI[k]) != 0)
+            && (RAY_LO[k] & occLo) == 0 && (RAY_HI[k] & occHi) == 0;
+    }
+
+    /** Number of direct and two-move escape squares. */
+    private int _direct, _twoMove;
+    /** The squares on which the king would have two open corridors. */
+    private long _forkLo, _forkHi;
+    /** The two-move escape squares. */
+    private long _twoLo, _twoHi;
+    /** The squares from which the king would threaten to escape. */
+    private long _threatLo, _threatHi;
+    /** The squares on the king's escape routes. */
+    private long _blockLo, _blockHi;
+}
@@ -0,0 +1,25 @@
+package tablut;
+
+/** The switch for this program's Java Flight Recorder events
+ *  (SearchEvent, CommandEvent, and MoveGenerationEvent).  Until enable
+ *  is called, the code that would record them does nothing, so that the
+ *  jdk.jfr classes are never loaded: loading them would add a noticeable
+ *  fraction to the time of a short run such as a test script.
+ *  @author ANUJS
+ */
+final class Events {
+
+    /** Return true iff events are to be recorded. */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /** Record events from now on.  Must be called before any other
+     *  thread is started. */
+    static void enable() {
+        _enabled = true;
+    }
+
+    /** True iff events are to be recorded. */
+    private static boolean _enabled;
+}
@@ -0,0 +1,511 @@
+package tablut;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.lang.Math.*;
+
+import static tablut.Bits.*;
+import static tablut.Piece.*;
+
+/** A Player that chooses moves by Monte Carlo tree search, as an
+ *  alternative to the alpha-beta search of AI.  Each iteration descends
+ *  the tree from the current position, choosing at each node the child
+ *  with the greatest PUCT value, Q + EXPLORATION * P * sqrt(N) / (1 + n),
+ *  where Q is the child's average result for the side that chose it, n
+ *  its number of visits, N its parent's, and P a prior from a few cheap
+ *  move features (wins, captures, king runs).  A node is expanded on its
+ *  second visit.  From the leaf, a playout finishes the game with random
+ *  moves, preferring captures, and always taking an immediate win or
+ *  parrying an immediate escape; its result is then added to every node
+ *  on the path.  Playouts make moves on a Board copied from the root and
+ *  allocate nothing.
+ *
+ *  Several threads may search one tree.  They descend, expand, and
+ *  update it under a single lock, and run their playouts, which take
+ *  nearly all the time, in parallel.  A descending thread counts a visit
+ *  at each node before its result is known (a virtual loss), so that the
+ *  others tend to choose different paths.  After each move, the subtree
+ *  of the position reached after the opponent's reply is kept for the
+ *  next search.
+ *  @author ANUJS
+ */
+class MCTS extends Player {
+
+    /** A new MCTS player with no piece or controller (intended to produce
+     *  a template), using the default settings. */
+    MCTS() {
+        super(null, null);
+        _timeLimit = AI.DEFAULT_TIME_LIMIT;
+    }
+
+    /** A new MCTS player playing PIECE under control of CONTROLLER, with
+     *  the settings of TEMPLATE. */
+    private MCTS(MCTS template, Piece piece, Controller controller) {
+        super(piece, controller);
+        _timeLimit = template._timeLimit;
+        _playoutLimit = template._playoutLimit;
+        _threads = template._threads;
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new MCTS(this, piece, controller);
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+
+    /** Limit each move's search to about MILLIS milliseconds. */
+    void setTimeLimit(long millis) {
+        _timeLimit = millis;
+    }
+
+    /** Limit each move's search to about PLAYOUTS playouts, or remove the
+     *  limit if PLAYOUTS is 0.  Searches draw their random numbers from
+     *  the controller's (see Controller.setSeed), so that with one thread
+     *  a search limited only by playouts is reproducible. */
+    void setPlayoutLimit(long playouts) {
+        _playoutLimit = playouts;
+    }
+
+    /** Search with THREADS threads sharing one tree. */
+    void setThreads(int threads) {
+        _threads = max(threads, 1);
+    }
+
+    @Override
+    String myMove() {
+        Move move = search(board());
+        _controller.logComment("mcts: %d playouts, %d reused, %d new nodes,"
+                               + " %.1f%% wins, pv %s", _playouts, _reused,
+                               _nodes, 100.0 * winRate(),
+                               principalVariation());
+        return move.toString();
+    }
+
+    /** Return the number of playouts made by my last search. */
+    long playouts() {
+        return _playouts;
+    }
+
+    /** Return the average result, for the side to move, of the playouts
+     *  through the move chosen by my last search. */
+    double winRate() {
+        Node best = mostVisited(_root);
+        return best == null || best.visits == 0 ? 0.0
+            : best.wins / best.visits;
+    }
+
+    /** Return the most visited line from the root of my last search, as
+     *  moves separated by blanks. */
+    String principalVariation() {
+        StringBuilder result = new StringBuilder();
+        for (Node node = mostVisited(_root); node != null;
+             node = mostVisited(node)) {
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append(Move.mv(node.move));
+        }
+        return result.toString();
+    }
+
+    /** Return the most visited move for the side to move in POSITION,
+     *  assuming there is a move, after searching until the time or
+     *  playout budget runs out.  POSITION is not modified. */
+    Move search(Board position) {
+        _position = new Board(position);
+        _root = reusedRoot(position.hash());
+        if (_root == null) {
+            _root = new Node(0, 1f, position.hash());
+        }
+        _reused = _root.visits;
+        _playouts = _nodes = 0;
+        _stop = false;
+        _deadline = System.nanoTime() + _timeLimit * 1_000_000;
+        long seed = _controller == null ? DEFAULT_SEED
+            : _controller.randInt(Integer.MAX_VALUE);
+        Future<?>[] searching = startWorkers(seed);
+        _workers[0].run();
+        waitFor(searching);
+        return Move.mv(mostVisited(_root).move);
+    }
+
+    /** Return the node of the last search's tree for the position with
+     *  Board.hash HASH, reached by a move and a reply from its root, or
+     *  null if there is none. */
+    private Node reusedRoot(long hash) {
+        if (_root == null || _root.children == null) {
+            return null;
+        }
+        for (Node mine : _root.children) {
+            if (mine.children != null) {
+                for (Node reply : mine.children) {
+                    if (reply.hash == hash) {
+                        return reply;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Create my workers if needed, seeding them from SEED, start all
+     *  but the first searching in my thread pool, and return their
+     *  pending results (null if I have only one). */
+    private Future<?>[] startWorkers(long seed) {
+        if (_workers == null || _workers.length != _threads) {
+            if (_pool != null) {
+                _pool.shutdownNow();
+                _pool = null;
+            }
+            _workers = new Worker[_threads];
+            for (int i = 0; i < _threads; i += 1) {
+                _workers[i] = new Worker();
+            }
+            if (_threads > 1) {
+                _pool = Executors.newFixedThreadPool(_threads - 1, r -> {
+                    Thread thread = new Thread(r, "tablut-mcts");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        for (int i = 0; i < _threads; i += 1) {
+            _workers[i].seed(seed + i);
+        }
+        if (_threads == 1) {
+            return null;
+        }
+        Future<?>[] searching = new Future<?>[_threads - 1];
+        for (int i = 1; i < _threads; i += 1) {
+            searching[i - 1] = _pool.submit(_workers[i]);
+        }
+        return searching;
+    }
+
+    /** Wait for the worker searches whose pending results are SEARCHING
+     *  (null if none) to finish. */
+    private void waitFor(Future<?>[] searching) {
+        if (searching == null) {
+            return;
+        }
+        for (Future<?> result : searching) {
+            try {
+                result.get();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException excp) {
+                throw new IllegalStateException(excp.getCause());
+            }
+        }
+    }
+
+    /** Return the most visited child of NODE, or null if it has none. */
+    private Node mostVisited(Node node) {
+        Node best = null;
+        if (node != null && node.children != null) {
+            for (Node child : node.children) {
+                if (best == null || child.visits > best.visits) {
+                    best = child;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** A node of the search tree: the position after a move. */
+    private static final class Node {
+        /** A node for the position with Board.hash HASH reached by the
+         *  packed move MOVE, whose prior is PRIOR. */
+        Node(int move, float prior, long hash) {
+            this.move = move;
+            this.prior = prior;
+            this.hash = hash;
+        }
+
+        /** The packed move leading here (0 at the root). */
+        final int move;
+        /** The move's prior probability among its siblings. */
+        final float prior;
+        /** The Board.hash of my position. */
+        final long hash;
+        /** My children, one per legal move, or null if unexpanded. */
+        Node[] children;
+        /** Number of visits, including those still in progress. */
+        int visits;
+        /** Total result of the finished visits for the side that made
+         *  my move: 1 for a win, 1/2 for an unfinished game. */
+        double wins;
+    }
+
+    /** One thread's share of a search, with its own board and buffers. */
+    private final class Worker implements Runnable {
+
+        /** Seed my random numbers with SEED. */
+        void seed(long seed) {
+            _random = seed * 0x9E3779B97F4A7C15L | 1;
+        }
+
+        @Override
+        public void run() {
+            while (!_stop) {
+                iterate();
+            }
+        }
+
+        /** Carry out one iteration: descend, play out, and record the
+         *  result on the path. */
+        private void iterate() {
+            _board.copy(_position);
+            int depth = 0;
+            synchronized (_lock) {
+                Node node = _root;
+                while (true) {
+                    node.visits += 1;
+                    _path[depth] = node;
+                    depth += 1;
+                    if (_board.winner() != null || depth == MAX_TREE_DEPTH) {
+                        break;
+                    }
+                    if (node.children == null
+                        && (node == _root || node.visits >= EXPAND_VISITS)
+                        && _nodes < MAX_NEW_NODES) {
+                        expand(node);
+                    }
+                    if (node.children == null
+                        || node.children.length == 0) {
+                        break;
+                    }
+                    node = select(node);
+                    _board.makeMove(node.move);
+                }
+            }
+            Piece winner = playout();
+            synchronized (_lock) {
+                Piece mover = _position.turn();
+                for (int i = 1; i < depth; i += 1) {
+                    _path[i].wins += winner == null ? 0.5
+                        : winner == mover ? 1.0 : 0.0;
+                    mover = mover.opponent();
+                }
+                _playouts += 1;
+                if ((_playoutLimit > 0 && _playouts >= _playoutLimit)
+                    || System.nanoTime() >= _deadline) {
+                    _stop = true;
+                }
+            }
+        }
+
+        /** Return the child of NODE, whose position is on my board, with
+         *  the greatest PUCT value. */
+        private Node select(Node node) {
+            double sqrtN = sqrt(node.visits);
+            double firstPlay = node == _root || node.visits <= 1 ? 0.5
+                : 1.0 - node.wins / (node.visits - 1);
+            Node best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (Node child : node.children) {
+                double q = child.visits == 0 ? firstPlay
+                    : child.wins / child.visits;
+                double value =
+                    q + EXPLORATION * child.prior * sqrtN / (1 + child.visits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /** Give NODE, whose position is on my board, a child for each
+         *  legal move, with priors in proportion to moveWeight. */
+        private void expand(Node node) {
+            int n = _board.legalMoves(_board.turn(), _moves);
+            int runs = _board.turn() == WHITE
+                ? _board.kingRunMoves(_runs, 0) : 0;
+            float total = 0;
+            for (int i = 0; i < n; i += 1) {
+                _weights[i] = moveWeight(_moves[i], runs);
+                total += _weights[i];
+            }
+            Node[] children = new Node[n];
+            for (int i = 0; i < n; i += 1) {
+                _board.makeMove(_moves[i]);
+                children[i] =
+                    new Node(_moves[i], _weights[i] / total, _board.hash());
+                _board.unmakeMove();
+            }
+            _nodes += n;
+            node.children = children;
+        }
+
+        /** Return the prior weight of MOVE on my board, given that the
+         *  first RUNS entries of _runs are its king runs. */
+        private float moveWeight(int move, int runs) {
+            if (_board.capturesKing(move)) {
+                return WIN_WEIGHT;
+            }
+            for (int i = 0; i < runs; i += 1) {
+                if (_runs[i] == move) {
+                    return has(EDGE_LO, EDGE_HI, Move.to(move)) ? WIN_WEIGHT
+                        : RUN_WEIGHT;
+                }
+            }
+            int captures = Integer.bitCount(
+                _board.captures(Move.from(move), Move.to(move))
+                & Board.CAPTURE_DIRS);
+            return 1 + CAPTURE_WEIGHT * captures;
+        }
+
+        /** Finish the game on my board with random moves, and return the
+         *  winner, or null if it is still unfinished after MAX_PLAYOUT
+         *  plies. */
+        private Piece playout() {
+            for (int ply = 0; ply < MAX_PLAYOUT; ply += 1) {
+                Piece winner = _board.winner();
+                if (winner != null) {
+                    return winner;
+                }
+                Piece side = _board.turn();
+                boolean threat = _board.kingEscapeLines() > 0;
+                if (side == WHITE && threat) {
+                    return WHITE;
+                }
+                if (side == BLACK && _board.kingAttackers() > 0
+                    && canCaptureKing()) {
+                    return BLACK;
+                }
+                int n = _board.legalMoves(side, _moves);
+                if (n == 0) {
+                    return side.opponent();
+                }
+                int move;
+                if (side == BLACK && threat) {
+                    move = parry(n);
+                    if (move == 0) {
+                        return WHITE;
+                    }
+                } else {
+                    move = _moves[nextInt(n)];
+                    if (nextInt(CAPTURE_ODDS) != 0) {
+                        int captures = _board.captureMoves(side, _captures);
+                        if (captures > 0) {
+                            move = _captures[nextInt(captures)];
+                        }
+                    }
+                }
+                _board.makeMove(move);
+            }
+            return _board.winner();
+        }
+
+        /** Return true iff black, to move on my board, can capture the
+         *  king. */
+        private boolean canCaptureKing() {
+            int n = _board.captureMoves(BLACK, _captures);
+            for (int i = 0; i < n; i += 1) {
+                if (_board.capturesKing(_captures[i])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Return a random one of the N moves in _moves that leaves the
+         *  king no open line to the edge, or 0 if there is none. */
+        private int parry(int n) {
+            int start = nextInt(n);
+            for (int k = 0; k < n; k += 1) {
+                int move = _moves[(start + k) % n];
+                _board.makeMove(move);
+                boolean parried = _board.kingEscapeLines() == 0;
+                _board.unmakeMove();
+                if (parried) {
+                    return move;
+                }
+            }
+            return 0;
+        }
+
+        /** Return a pseudo-random int in the range 0 inclusive to N
+         *  exclusive (xorshift). */
+        private int nextInt(int n) {
+            _random ^= _random << 13;
+            _random ^= _random >>> 7;
+            _random ^= _random << 17;
+            return (int) ((_random >>> 33) % n);
+        }
+
+        /** My board, on which I descend and play out. */
+        private final Board _board = new Board();
+        /** The nodes on my current path. */
+        private final Node[] _path = new Node[MAX_TREE_DEPTH];
+        /** Move buffers. */
+        private final int[] _moves = new int[Board.MAX_MOVES],
+            _captures = new int[Board.MAX_MOVES],
+            _runs = new int[Board.MAX_MOVES];
+        /** Prior weights of the moves in _moves. */
+        private final float[] _weights = new float[Board.MAX_MOVES];
+        /** State of my random number generator. */
+        private long _random;
+    }
+
+    /** Weight of the PUCT exploration term. */
+    private static final double EXPLORATION = 1.5;
+
+    /** A node is expanded once it has this many visits. */
+    private static final int EXPAND_VISITS = 2;
+
+    /** Greatest number of nodes added to the tree by one search. */
+    private static final int MAX_NEW_NODES = 4_000_000;
+
+    /** Greatest depth of the tree that is descended. */
+    private static final int MAX_TREE_DEPTH = 512;
+
+    /** Greatest number of plies in a playout. */
+    private static final int MAX_PLAYOUT = 300;
+
+    /** A playout picks a capture, if there is one, except once in this
+     *  many moves. */
+    private static final int CAPTURE_ODDS = 2;
+
+    /** Prior weights of a move that wins, a king run that does not, and
+     *  each piece a move captures, relative to 1 for a quiet move. */
+    private static final float WIN_WEIGHT = 100, RUN_WEIGHT = 4,
+        CAPTURE_WEIGHT = 3;
+
+    /** Random seed for searches without a controller. */
+    private static final long DEFAULT_SEED = 0x7AB1DL;
+
+    /** Time budget per move in milliseconds. */
+    private long _timeLimit;
+    /** Playout budget per move, or 0 if unlimited. */
+    private long _playoutLimit;
+    /** Number of search threads, including the main one. */
+    private int _threads = 1;
+
+    /** Guards the tree and the counts below. */
+    private final Object _lock = new Object();
+    /** The root of the current tree, whose position is _position. */
+    private Node _root;
+    /** The position being searched. */
+    private Board _position;
+    /** Number of visits of the root inherited from the previous search. */
+    private int _reused;
+    /** Number of playouts and new nodes of the current search. */
+    private long _playouts, _nodes;
+    /** System.nanoTime by which the current search must stop. */
+    private long _deadline;
+    /** Set when the current search must stop. */
+    private volatile boolean _stop;
+    /** My workers, the first of which runs in the searching thread. */
+    private Worker[] _workers;
+    /** Thread pool running my other workers, or null if none. */
+    private ExecutorService _pool;
+}
@@ -0,0 +1,56 @@
+package tablut;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Move.mv;
+
+/** Tests of the MCTS class.
+ *  @author ANUJS
+ */
+public class MCTSTest {
+
+    /** Number of playouts per search in these tests. */
+    private static final int PLAYOUTS = 2000;
+
+    /** Return a template MCTS player searching with THREADS threads and
+     *  limited only by PLAYOUTS. */
+    private MCTS player(int threads) {
+        MCTS player = new MCTS();
+        player.setTimeLimit(60_000);
+        player.setPlayoutLimit(PLAYOUTS);
+        player.setThreads(threads);
+        return player;
+    }
+
+    @Test
+    public void testLegalMove() {
+        for (int threads = 1; threads <= 2; threads += 1) {
+            MCTS player = player(threads);
+            Board b = new Board();
+            for (int ply = 0; ply < 4; ply += 1) {
+                Move move = player.search(b);
+                assertTrue(b.isLegal(move));
+                assertTrue(player.playouts() >= PLAYOUTS);
+                assertTrue(player.playouts() < PLAYOUTS + threads);
+                b.makeMove(move);
+            }
+        }
+    }
+
+    @Test
+    public void testReproducible() {
+        MCTS first = player(1), second = player(1);
+        Board b = new Board();
+        b.makeMove(mv("a4-b"));
+        for (int ply = 0; ply < 4; ply += 1) {
+            Move move = first.search(b);
+            assertSame(move, second.search(b));
+            assertEquals(first.principalVariation(),
+                         second.principalVariation());
+            assertEquals(first.winRate(), second.winRate(), 0.0);
+            b.makeMove(move);
+        }
+    }
+
+}
@@ -1,11 +1,16 @@
 package tablut;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.function.Supplier;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 
+import static tablut.Piece.*;
 import static tablut.Utils.error;
 
 import ucb.util.CommandArgs;
@@ -19,12 +24,49 @@ public class Main {
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --testing --strict --log={0,1} --={0,2}",
+            new CommandArgs("--display --testing --strict --log={0,1}"
+                            + " --hash={0,1} --hashfile={0,1}"
+                            + " --time={0,1} --nodes={0,1}"
+                            + " --threads={0,1} --split={0,1}"
+                            + " --reductions={0,1}"
+                            + " --suite --depth={0,1} --solve"
+                            + " --tablebase={0,1} --generate --pieces={0,1}"
+                            + " --book={0,1} --build --plies={0,1}"
+                            + " --ponder --engine={0,1} --playouts={0,1}"
+                            + " --perft --divide --check={0,1}"
+                            + " --bench --stats --jfr"
+                            + " --={0,2}",
                             args);
         if (!options.ok()) {
-            System.err.println("Usage: java tablut.Main [--display]"
-                               + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
-            System.exit(1);
+            usage();
+        }
+        if (options.contains("--jfr")) {
+            Events.enable();
+        }
+
+        if (options.contains("--suite")) {
+            runSuite(options);
+            System.exit(0);
+        }
+        if (options.contains("--solve")) {
+            runSolver(options);
+            System.exit(0);
+        }
+        if (options.contains("--generate")) {
+            generateTablebase(options);
+            System.exit(0);
+        }
+        if (options.contains("--build")) {
+            buildBook(options);
+            System.exit(0);
+        }
+        if (options.contains("--perft")) {
+            runPerft(options);
+            System.exit(0);
+        }
+        if (options.contains("--bench")) {
+            runBench(options);
+            System.exit(0);
         }
 
         List<String> files = options.get("--");
@@ -63,6 +105,318 @@ public class Main {
 
     }
 
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java tablut.Main [--display]"
+                           + " [--log=FILE] [--strict] [--hash=MB]"
+                           + " [--hashfile=FILE]"
+                           + " [--time=MS] [--nodes=N] [--depth=N]"
+                           + " [--threads=N] [--split=N]"
+                           + " [--reductions=SPEC] [--tablebase=FILE]"
+                           + " [--book=FILE] [--ponder] [--stats]"
+                           + " [--engine=NAME]"
+                           + " [--playouts=N] [INPUT [OUTPUT]]");
+        System.err.println("       (each form also takes --jfr, which"
+                           + " records Flight Recorder events)");
+        System.err.println("       java tablut.Main --suite [--depth=N]"
+                           + " [--hash=MB] [--hashfile=FILE]"
+                           + " [--threads=N] [--split=N]"
+                           + " [--reductions=SPEC]");
+        System.err.println("       java tablut.Main --solve [--nodes=N]"
+                           + " [POSITIONS]");
+        System.err.println("       java tablut.Main --generate"
+                           + " --tablebase=FILE [--pieces=N] [--threads=N]");
+        System.err.println("       java tablut.Main --build --book=FILE"
+                           + " [--plies=N] LOGS");
+        System.err.println("       java tablut.Main --perft [--depth=N]"
+                           + " [--divide] [--check=FILE] [--threads=N]"
+                           + " [--hash=MB]");
+        System.err.println("       java tablut.Main --bench [--depth=N]");
+        System.exit(1);
+    }
+
+    /** Search the standard position suite to the depth given in OPTIONS
+     *  and report the time taken for each position. */
+    private static void runSuite(CommandArgs options) {
+        try {
+            Suite suite = Suite.standard();
+            AI template = autoPlayer(options);
+            int depth = intOption(options, "--depth", DEFAULT_SUITE_DEPTH);
+            if (options.contains("--split")) {
+                System.out.printf("%d positions, depth %d, reproducible"
+                                  + " split search, %d worker(s)%n",
+                                  suite.size(), depth,
+                                  intOption(options, "--split", 1));
+            } else {
+                System.out.printf("%d positions, depth %d, %d thread(s)%n",
+                                  suite.size(), depth,
+                                  intOption(options, "--threads", 1));
+            }
+            suite.timeToDepth(template, depth, System.out);
+        } catch (IOException excp) {
+            System.err.printf("Could not read suite: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Search the standard position suite to the depth given in OPTIONS
+     *  with the default settings, and report the total number of nodes
+     *  and the speed of the search (see Suite.bench). */
+    private static void runBench(CommandArgs options) {
+        try {
+            Suite.standard().bench(intOption(options, "--depth",
+                                             Suite.BENCH_DEPTH),
+                                   System.out);
+        } catch (IOException excp) {
+            System.err.printf("Could not read suite: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Try to prove a forced win for the side to move in each position
+     *  of the file named in OPTIONS, in the format of a Suite, or of the
+     *  standard suite if none is named, and report the results. */
+    private static void runSolver(CommandArgs options) {
+        List<String> files = options.get("--");
+        Suite suite;
+        try {
+            if (files.isEmpty()) {
+                suite = Suite.standard();
+            } else {
+                suite = new Suite(new FileInputStream(files.get(0)));
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Could not read positions: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+            return;
+        }
+        Solver solver =
+            new Solver(intOption(options, "--nodes",
+                                 (int) Solver.DEFAULT_NODES));
+        for (int k = 0; k < suite.size(); k += 1) {
+            long start = System.nanoTime();
+            Piece winner = solver.solve(suite.position(k));
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            String result =
+                winner == WHITE ? "white wins"
+                : winner == BLACK ? "black wins"
+                : solver.refuted() ? "no win" : "unknown";
+            StringBuilder line = new StringBuilder();
+            for (int move : solver.line()) {
+                line.append(' ').append(Move.mv(move));
+            }
+            System.out.printf("%-8s %-10s %8d ms %10d nodes%s%n",
+                              suite.name(k), result, millis, solver.nodes(),
+                              line);
+        }
+    }
+
+    /** Generate the endgame tablebase described by OPTIONS. */
+    private static void generateTablebase(CommandArgs options) {
+        if (!options.contains("--tablebase")) {
+            usage();
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            Tablebase.generate(intOption(options, "--pieces",
+                                         Tablebase.DEFAULT_PIECES),
+                               intOption(options, "--threads", threads),
+                               options.getFirst("--tablebase"), System.out);
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Could not generate tablebase: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Build an opening book as described by OPTIONS from the command
+     *  logs, or directories of them, that it names. */
+    private static void buildBook(CommandArgs options) {
+        if (!options.contains("--book") || options.get("--").isEmpty()) {
+            usage();
+        }
+        try {
+            Book.build(options.get("--"),
+                       intOption(options, "--plies", Book.DEFAULT_PLIES),
+                       options.getFirst("--book"), System.out);
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Could not build book: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Count the move sequences from the initial position to the depth
+     *  given in OPTIONS and report the count and time taken.  With
+     *  --check, instead count to each depth listed in the named file,
+     *  up to the depth in OPTIONS if there is one, and exit with an
+     *  error if any count differs from that in the file.  Each line of
+     *  the file holds a depth and the count to it, except for blank
+     *  lines and comments starting with #. */
+    private static void runPerft(CommandArgs options) {
+        Perft perft = perft(options);
+        if (!options.contains("--check")) {
+            perft.report(new Board(),
+                         intOption(options, "--depth", DEFAULT_PERFT_DEPTH),
+                         options.contains("--divide"), System.out);
+            return;
+        }
+        int maxDepth = intOption(options, "--depth", Integer.MAX_VALUE);
+        boolean ok = true;
+        try (Scanner in =
+             new Scanner(new FileInputStream(options.getFirst("--check")))) {
+            while (in.hasNextLine()) {
+                String line = in.nextLine().replaceFirst("#.*", "").trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] words = line.split("\\s+");
+                int depth = Integer.parseInt(words[0]);
+                long expected = Long.parseLong(words[1]);
+                if (depth <= maxDepth) {
+                    long count = perft.report(new Board(), depth,
+                                              options.contains("--divide"),
+                                              System.out);
+                    if (count != expected) {
+                        System.out.printf("perft %d: expected %d%n",
+                                          depth, expected);
+                        ok = false;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException excp) {
+            System.err.printf("Could not check perft counts: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /** Default depth for --perft. */
+    private static final int DEFAULT_PERFT_DEPTH = 4;
+
+    /** Return a move-path counter with the settings in OPTIONS. */
+    private static Perft perft(CommandArgs options) {
+        return new Perft(intOption(options, "--threads",
+                                   Runtime.getRuntime().availableProcessors()),
+                         intOption(options, "--hash", 0));
+    }
+
+    /** Default search depth for --suite. */
+    private static final int DEFAULT_SUITE_DEPTH = 6;
+
+    /** Return a template AI with the settings in OPTIONS. */
+    private static AI autoPlayer(CommandArgs options) {
+        int megabytes = intOption(options, "--hash",
+                                  TranspositionTable.DEFAULT_MEGABYTES);
+        TranspositionTable table = null;
+        if (options.contains("--hashfile")) {
+            try {
+                table = TranspositionTable.map(options.getFirst("--hashfile"),
+                                               megabytes);
+            } catch (IOException | IllegalArgumentException excp) {
+                System.err.printf("Could not map hash file: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        } else {
+            table = new TranspositionTable(megabytes);
+        }
+        AI autoPlayer = new AI(table);
+        autoPlayer.setTimeLimit(intOption(options, "--time",
+                                          AI.DEFAULT_TIME_LIMIT));
+        if (options.contains("--nodes")) {
+            autoPlayer.setNodeLimit(intOption(options, "--nodes", 0));
+        }
+        if (options.contains("--depth")) {
+            autoPlayer.setDepthLimit(intOption(options, "--depth", 1));
+        }
+        autoPlayer.setThreads(intOption(options, "--threads", 1));
+        autoPlayer.setPonder(options.contains("--ponder"));
+        autoPlayer.setReportStats(options.contains("--stats"));
+        if (options.contains("--split")) {
+            autoPlayer.setWorkers(intOption(options, "--split", 1));
+        }
+        if (options.contains("--tablebase")) {
+            try {
+                autoPlayer.setTablebase(
+                    Tablebase.open(options.getFirst("--tablebase")));
+            } catch (IOException | IllegalArgumentException excp) {
+                System.err.printf("Could not read tablebase: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+        if (options.contains("--book")) {
+            try {
+                autoPlayer.setBook(Book.open(options.getFirst("--book")));
+            } catch (IOException | IllegalArgumentException excp) {
+                System.err.printf("Could not read book: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+        if (options.contains("--reductions")) {
+            try {
+                autoPlayer.setReductions(
+                    Reductions.parse(options.getFirst("--reductions")));
+            } catch (IllegalArgumentException excp) {
+                System.err.printf("Error: %s%n", excp.getMessage());
+                usage();
+            }
+        }
+        return autoPlayer;
+    }
+
+    /** Return a template MCTS player with the settings in OPTIONS. */
+    private static MCTS mctsPlayer(CommandArgs options) {
+        MCTS mctsPlayer = new MCTS();
+        mctsPlayer.setTimeLimit(intOption(options, "--time",
+                                          AI.DEFAULT_TIME_LIMIT));
+        if (options.contains("--playouts")) {
+            mctsPlayer.setPlayoutLimit(intOption(options, "--playouts", 0));
+        }
+        mctsPlayer.setThreads(intOption(options, "--threads", 1));
+        return mctsPlayer;
+    }
+
+    /** Return a Supplier of the value of MAKER that calls MAKER only the
+     *  first time it is asked. */
+    private static Supplier<Player> once(Supplier<Player> maker) {
+        Player[] made = new Player[1];
+        return () -> {
+            if (made[0] == null) {
+                made[0] = maker.get();
+            }
+            return made[0];
+        };
+    }
+
+    /** Return the value of the integer option NAME in OPTIONS, or DEFAULT
+     *  if it is absent.  Exits with a usage message if the value is not a
+     *  positive integer. */
+    private static int intOption(CommandArgs options, String name,
+                                 int dflt) {
+        if (!options.contains(name)) {
+            return dflt;
+        }
+        try {
+            int value = Integer.parseInt(options.getFirst(name));
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to usage message. */
+        }
+        usage();
+        return dflt;
+    }
+
     /** Return an appropriate Controller as indicated by OPTIONS. */
     private static Controller getController(CommandArgs options) {
         Player manualPlayer;
@@ -96,7 +450,19 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer,
-                              new AI(), options.contains("--strict"));
+        Map<String, Supplier<Player>> engines = new LinkedHashMap<>();
+        engines.put("ai", once(() -> autoPlayer(options)));
+        engines.put("mcts", once(() -> mctsPlayer(options)));
+        Supplier<Player> engine =
+            engines.get(options.getFirst("--engine", "ai"));
+        if (engine == null) {
+            System.err.printf("Unknown engine: %s%n",
+                              options.getFirst("--engine"));
+            usage();
+        }
+        Player autoPlayer = engine.get();
+
+        return new Controller(view, log, reporter, manualPlayer, autoPlayer,
+                              engines, options.contains("--strict"));
     }
 }
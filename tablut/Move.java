@@ -65,6 +65,34 @@ final class Move {
         return null;
     }
 
+    /** Return the unique Move denoted by the packed move MOVE (see
+     *  pack). */
+    static Move mv(int move) {
+        return mv(sq(from(move)), sq(to(move)));
+    }
+
+    /** Return the packed form of the move from the square with index FROM
+     *  to the square with index TO: FROM << FROM_SHIFT | TO.  Packed moves
+     *  let the search handle moves as plain ints. */
+    static int pack(int from, int to) {
+        return (from << FROM_SHIFT) | to;
+    }
+
+    /** Return the index of the square moved from in packed move MOVE. */
+    static int from(int move) {
+        return move >>> FROM_SHIFT;
+    }
+
+    /** Return the index of the square moved to in packed move MOVE. */
+    static int to(int move) {
+        return move & SQUARE_MASK;
+    }
+
+    /** Return my packed form. */
+    int packed() {
+        return pack(_from.index(), _to.index());
+    }
+
     /** Return true iff STR has the right format for a Move. */
     static boolean isGrammaticalMove(String str) {
         _moveMatcher.reset(str);
@@ -109,6 +137,12 @@ final class Move {
         return (_from.index() << 6) + _to.index();
     }
 
+    /** Position of the from-square index in a packed move. */
+    static final int FROM_SHIFT = 7;
+
+    /** Mask extracting the to-square index from a packed move. */
+    static final int SQUARE_MASK = (1 << FROM_SHIFT) - 1;
+
     /** The cache of all Moves created. */
     private static final Move[][] MOVES = new Move[NUM_SQUARES][NUM_SQUARES];
 
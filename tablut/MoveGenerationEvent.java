@@ -0,0 +1,29 @@
+package tablut;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A Java Flight Recorder event for one call of Board.legalMoves,
+ *  recorded only in a sample of about one position in
+ *  Board.GENERATION_SAMPLE_INTERVAL.  It is disabled unless a
+ *  recording's settings enable it.  As in all JFR events, the fields
+ *  are named as they appear in recordings.
+ *  @author ANUJS
+ */
+@Name("tablut.MoveGeneration")
+@Label("Move Generation")
+@Category("Tablut")
+@Description("A sampled call of Board.legalMoves")
+@StackTrace(false)
+@Enabled(false)
+final class MoveGenerationEvent extends Event {
+
+    /** The number of moves generated. */
+    @Label("Moves")
+    int moves;
+}
@@ -0,0 +1,81 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Square.NUM_SQUARES;
+
+/** Move-ordering statistics gathered by a search: two killer moves for
+ *  each ply, a butterfly history table scoring each from-to pair, and for
+ *  each move the countermove that last refuted it.  Moves are packed as
+ *  by Move.pack, and the tables are indexed directly by packed move.
+ *  @author ANUJS
+ */
+final class MoveHistory {
+
+    /** All packed moves are less than this. */
+    static final int MOVE_RANGE = NUM_SQUARES << Move.FROM_SHIFT;
+
+    /** History scores are halved when one exceeds this. */
+    private static final int HISTORY_LIMIT = 1 << 20;
+
+    /** Empty statistics for searches of up to MAXPLY plies. */
+    MoveHistory(int maxPly) {
+        _killers = new int[2 * (maxPly + 1)];
+    }
+
+    /** Forget everything. */
+    void clear() {
+        Arrays.fill(_killers, 0);
+        Arrays.fill(_history, 0);
+        Arrays.fill(_counters, 0);
+    }
+
+    /** Prepare for a new search: forget the killers, which are specific
+     *  to the previous position, and decay the history scores. */
+    void age() {
+        Arrays.fill(_killers, 0);
+        for (int i = 0; i < MOVE_RANGE; i += 1) {
+            _history[i] >>= 2;
+        }
+    }
+
+    /** Return killer move K (0 or 1) at PLY, or 0 if none. */
+    int killer(int ply, int k) {
+        return _killers[2 * ply + k];
+    }
+
+    /** Return the countermove recorded for the packed move PREVIOUS, or 0
+     *  if none. */
+    int counter(int previous) {
+        return _counters[previous];
+    }
+
+    /** Return the history score of the packed move MOVE. */
+    int history(int move) {
+        return _history[move];
+    }
+
+    /** Record that the quiet packed move MOVE, played at PLY in reply to
+     *  PREVIOUS (0 if none) with DEPTH remaining, caused a cutoff. */
+    void cutoff(int ply, int move, int previous, int depth) {
+        if (_killers[2 * ply] != move) {
+            _killers[2 * ply + 1] = _killers[2 * ply];
+            _killers[2 * ply] = move;
+        }
+        _counters[previous] = move;
+        _history[move] += depth * depth;
+        if (_history[move] > HISTORY_LIMIT) {
+            for (int i = 0; i < MOVE_RANGE; i += 1) {
+                _history[i] >>= 1;
+            }
+        }
+    }
+
+    /** Killer moves: those of ply p are at 2p and 2p + 1, most recent
+     *  first. */
+    private final int[] _killers;
+    /** History scores, indexed by packed move. */
+    private final int[] _history = new int[MOVE_RANGE];
+    /** Countermoves, indexed by the packed move they answer. */
+    private final int[] _counters = new int[MOVE_RANGE];
+}
@@ -0,0 +1,240 @@
+package tablut;
+
+import static tablut.Piece.*;
+
+/** Produces the legal moves of a position one at a time, best-looking
+ *  first, for the search.  Moves come in stages: the hash move; then
+ *  captures, king moves, and, when the king threatens a fork, black moves
+ *  that block its escape routes (see Escapes); then the killer moves and
+ *  the countermove of the MoveHistory; then the remaining quiet moves by
+ *  history score.  Each stage is prepared only when it is reached, and
+ *  moves within a stage are selected one at a time rather than sorted, so
+ *  a cutoff early on saves the work of ordering the rest.  A MovePicker
+ *  is reused for every node at one ply and never allocates after
+ *  construction.
+ *  @author ANUJS
+ */
+final class MovePicker {
+
+    /** A MovePicker taking statistics from HISTORY. */
+    MovePicker(MoveHistory history) {
+        _history = history;
+    }
+
+    /** Start producing the moves of the side to move on BOARD, at PLY of
+     *  the search, trying the packed move HASHMOVE (0 if none) first. */
+    void init(Board board, int hashMove, int ply) {
+        _board = board;
+        _hashMove = hashMove;
+        _ply = ply;
+        _stage = HASH;
+        _count = 0;
+        _escapes.analyze(board);
+    }
+
+    /** Return the next packed move, or 0 if there are no more. */
+    int next() {
+        while (true) {
+            switch (_stage) {
+            case HASH:
+                _stage = GENERATE;
+                if (_hashMove != 0 && _board.isLegal(_hashMove)) {
+                    return emit(_hashMove, score(_hashMove) == 0);
+                }
+                _hashMove = 0;
+                break;
+            case GENERATE:
+                generate();
+                _stage = GOOD;
+                break;
+            case GOOD:
+                if (_cur < _goodEnd) {
+                    return emit(selectBest(_cur, _goodEnd), false);
+                }
+                _stage = KILLER1;
+                break;
+            case KILLER1: case KILLER2: case COUNTER:
+                int special = special(_stage);
+                _stage += 1;
+                if (special != 0 && takeQuiet(special)) {
+                    return emit(special, true);
+                }
+                break;
+            case QUIET_INIT:
+                for (int i = _cur; i < _n; i += 1) {
+                    _scores[i] = _history.history(_moves[i]);
+                }
+                _stage = QUIET;
+                break;
+            case QUIET:
+                if (_cur < _n) {
+                    return emit(selectBest(_cur, _n), true);
+                }
+                _stage = DONE;
+                break;
+            default:
+                return 0;
+            }
+        }
+    }
+
+    /** Return true iff the last move returned by next is quiet: neither a
+     *  capture, nor a king move, nor a block of an escape route. */
+    boolean quiet() {
+        return _quiet;
+    }
+
+    /** Return true iff the last move returned by next moves the king to
+     *  a square with two open lines to the edge, only one of which the
+     *  opponent can close (see Escapes.forks). */
+    boolean fork() {
+        return _fork;
+    }
+
+    /** Return the number of moves returned by next since init. */
+    int count() {
+        return _count;
+    }
+
+    /** Record that MOVE, which is QUIET or not, is being returned, and
+     *  return it. */
+    private int emit(int move, boolean quiet) {
+        _quiet = quiet;
+        _fork = !quiet && _board.get(Move.from(move)) == KING
+            && _escapes.forks(Move.to(move));
+        _count += 1;
+        return move;
+    }
+
+    /** Return the move to try at special stage STAGE, or 0 if there is
+     *  none distinct from the moves tried already. */
+    private int special(int stage) {
+        int k0 = _history.killer(_ply, 0), k1 = _history.killer(_ply, 1);
+        switch (stage) {
+        case KILLER1:
+            return k0;
+        case KILLER2:
+            return k1 != k0 ? k1 : 0;
+        default:
+            int c = _history.counter(_board.lastMove());
+            return c != k0 && c != k1 ? c : 0;
+        }
+    }
+
+    /** Generate all moves other than the hash move, and put those with a
+     *  positive ordering score at the front. */
+    private void generate() {
+        _n = _board.legalMoves(_board.turn(), _moves);
+        _goodEnd = 0;
+        for (int i = 0; i < _n; i += 1) {
+            int move = _moves[i];
+            if (move == _hashMove) {
+                _n -= 1;
+                _moves[i] = _moves[_n];
+                i -= 1;
+                continue;
+            }
+            int score = score(move);
+            if (score > 0) {
+                _moves[i] = _moves[_goodEnd];
+                _moves[_goodEnd] = move;
+                _scores[_goodEnd] = score;
+                _goodEnd += 1;
+            }
+        }
+        _cur = 0;
+    }
+
+    /** Return the ordering score of packed MOVE if it is a capture, a
+     *  king move, or a black move that blocks an escape route, and
+     *  otherwise 0. */
+    private int score(int move) {
+        int score = 0, to = Move.to(move);
+        if (_board.isCapture(move)) {
+            score += CAPTURE_SCORE;
+        }
+        Piece mover = _board.get(Move.from(move));
+        if (mover == KING) {
+            score += KING_SCORE;
+            if (Bits.has(Bits.EDGE_LO, Bits.EDGE_HI, to)) {
+                score += ESCAPE_SCORE;
+            } else if (_escapes.threatens(to)) {
+                score += THREAT_SCORE;
+            }
+        } else if (mover == BLACK && _escapes.fork()
+                   && _escapes.blocks(to)) {
+            score += BLOCK_SCORE;
+        }
+        return score;
+    }
+
+    /** If MOVE is among the quiet moves not yet returned, move it to
+     *  position _cur, advance _cur past it, and return true.  Otherwise
+     *  return false. */
+    private boolean takeQuiet(int move) {
+        for (int i = _cur; i < _n; i += 1) {
+            if (_moves[i] == move) {
+                _moves[i] = _moves[_cur];
+                _moves[_cur] = move;
+                _cur += 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Swap the highest-scoring move in positions FROM to TO-1 into
+     *  position FROM, advance _cur past it, and return it. */
+    private int selectBest(int from, int to) {
+        int best = from;
+        for (int i = from + 1; i < to; i += 1) {
+            if (_scores[i] > _scores[best]) {
+                best = i;
+            }
+        }
+        int move = _moves[best], score = _scores[best];
+        _moves[best] = _moves[from];
+        _scores[best] = _scores[from];
+        _moves[from] = move;
+        _scores[from] = score;
+        _cur = from + 1;
+        return move;
+    }
+
+    /** Stages of move production, in order. */
+    private static final int
+        HASH = 0, GENERATE = 1, GOOD = 2, KILLER1 = 3, KILLER2 = 4,
+        COUNTER = 5, QUIET_INIT = 6, QUIET = 7, DONE = 8;
+
+    /** Ordering scores of captures, king moves, and blocks. */
+    private static final int
+        CAPTURE_SCORE = 2, KING_SCORE = 1, ESCAPE_SCORE = 4,
+        THREAT_SCORE = 2, BLOCK_SCORE = 1;
+
+    /** Source of killers, countermoves, and history scores. */
+    private final MoveHistory _history;
+    /** The generated moves: positions [0, _goodEnd) hold the captures and
+     *  king moves, and [_goodEnd, _n) the quiet ones.  Moves before _cur
+     *  have been returned. */
+    private final int[] _moves = new int[Board.MAX_MOVES];
+    /** Ordering scores parallel to _moves for the current stage. */
+    private final int[] _scores = new int[Board.MAX_MOVES];
+    /** The board whose moves I produce. */
+    private Board _board;
+    /** The hash move, or 0 if none (or it was illegal). */
+    private int _hashMove;
+    /** The ply being searched. */
+    private int _ply;
+    /** The current stage. */
+    private int _stage;
+    /** Bounds of the move partitions; see _moves. */
+    private int _n, _goodEnd, _cur;
+    /** Number of moves returned. */
+    private int _count;
+    /** True iff the last move returned was quiet. */
+    private boolean _quiet;
+    /** True iff the last move returned forks the king's escapes. */
+    private boolean _fork;
+    /** The king's escape routes in the position of _board. */
+    private final Escapes _escapes = new Escapes();
+}
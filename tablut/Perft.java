@@ -0,0 +1,195 @@
+package tablut;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.lang.Math.max;
+
+import static tablut.Utils.*;
+
+/** A move-path enumerator ("perft"): counts the sequences of legal moves
+ *  of a given length from a position, using Board.legalMoves and
+ *  Board.makeMove exactly as the search does.  A sequence ends early when
+ *  the game is won, so the counts check the capture and win rules as
+ *  well as the move generator, and the time they take measures both.
+ *
+ *  The subtrees of the root moves are counted in parallel.  They may also
+ *  share a table of the counts of subtrees already seen, keyed by
+ *  position and depth.  Since a win by repetition depends on the moves
+ *  that led to a position and not only on the position itself, counts
+ *  with a table are exact only as long as no repetition is reached
+ *  within the depth counted; those without one are always exact.  Like
+ *  TranspositionTable, the table is shared without locking: each key is
+ *  stored XORed with its count.
+ *  @author ANUJS
+ */
+final class Perft {
+
+    /** A counter that counts the root moves' subtrees with THREADS
+     *  threads and, if MEGABYTES is positive, a table of subtree counts
+     *  of at most MEGABYTES megabytes. */
+    Perft(int threads, int megabytes) {
+        _threads = max(threads, 1);
+        if (megabytes > 0) {
+            int size = Integer.highestOneBit(
+                (int) Math.min(1 << 30,
+                               ((long) megabytes << 20) / (2 * Long.BYTES)));
+            _keys = new long[size];
+            _counts = new long[size];
+            _mask = size - 1;
+        } else {
+            _keys = _counts = null;
+            _mask = 0;
+        }
+    }
+
+    /** Return the number of sequences of DEPTH legal moves from the
+     *  position on BOARD, which is not modified. */
+    long count(Board board, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long total = 0;
+        for (long count : divide(board, depth, new int[Board.MAX_MOVES])) {
+            total += count;
+        }
+        return total;
+    }
+
+    /** Store the legal moves from the position on BOARD, which is not
+     *  modified, into MOVES, packed, and return the number of sequences
+     *  of DEPTH legal moves that start with each of them (so that the
+     *  result is as long as the number of moves).  DEPTH must be
+     *  positive; MOVES must have room for Board.MAX_MOVES moves. */
+    long[] divide(Board board, int depth, int[] moves) {
+        if (depth <= 0) {
+            throw error("perft depth must be positive");
+        }
+        int n = board.winner() != null ? 0
+            : board.legalMoves(board.turn(), moves);
+        long[] result = new long[n];
+        if (depth == 1) {
+            Arrays.fill(result, 1);
+            return result;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        try {
+            List<Future<Long>> subtrees = new ArrayList<>();
+            for (int i = 0; i < n; i += 1) {
+                Board child = new Board(board);
+                child.makeMove(moves[i]);
+                Walker walker = new Walker(depth - 1);
+                subtrees.add(pool.submit(() -> walker.count(child,
+                                                            depth - 1)));
+            }
+            for (int i = 0; i < n; i += 1) {
+                result[i] = subtrees.get(i).get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(excp);
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /** Count the sequences of DEPTH moves from BOARD and report the
+     *  result, with the time taken, on OUT.  If DIVIDE, first report the
+     *  count for each legal move from BOARD.  Returns the total. */
+    long report(Board board, int depth, boolean divide, PrintStream out) {
+        long start = System.nanoTime();
+        long total;
+        if (divide && depth > 0) {
+            int[] moves = new int[Board.MAX_MOVES];
+            long[] counts = divide(board, depth, moves);
+            total = 0;
+            for (int i = 0; i < counts.length; i += 1) {
+                out.printf("%-6s %d%n", Move.mv(moves[i]), counts[i]);
+                total += counts[i];
+            }
+        } else {
+            total = count(board, depth);
+        }
+        long nanos = max(System.nanoTime() - start, 1);
+        out.printf("perft %d: %d nodes, %d ms, %d nodes/s%n", depth, total,
+                   nanos / 1_000_000, (long) (total * 1e9 / nanos));
+        return total;
+    }
+
+    /** Return the key of the table entry for the position on BOARD
+     *  counted to DEPTH. */
+    private static long key(Board board, int depth) {
+        return board.hash() ^ (depth * DEPTH_KEY);
+    }
+
+    /** Counts the sequences of moves from one root move's subtree. */
+    private class Walker {
+
+        /** A Walker for subtrees at most DEPTH deep. */
+        Walker(int depth) {
+            _moves = new int[depth + 1][Board.MAX_MOVES];
+        }
+
+        /** Return the number of sequences of DEPTH legal moves from
+         *  BOARD, which is restored when done. */
+        long count(Board board, int depth) {
+            if (depth == 0) {
+                return 1;
+            }
+            if (board.winner() != null) {
+                return 0;
+            }
+            int[] moves = _moves[depth];
+            int n = board.legalMoves(board.turn(), moves);
+            if (depth == 1) {
+                return n;
+            }
+            long key = 0;
+            int index = 0;
+            if (_keys != null) {
+                key = key(board, depth);
+                index = (int) key & _mask;
+                long count = _counts[index];
+                if ((_keys[index] ^ count) == key) {
+                    return count;
+                }
+            }
+            long total = 0;
+            for (int i = 0; i < n; i += 1) {
+                board.makeMove(moves[i]);
+                total += count(board, depth - 1);
+                board.unmakeMove();
+            }
+            if (_keys != null) {
+                _keys[index] = key ^ total;
+                _counts[index] = total;
+            }
+            return total;
+        }
+
+        /** Move buffers, one for each remaining depth. */
+        private final int[][] _moves;
+    }
+
+    /** Multiplier mixing the depth into table keys. */
+    private static final long DEPTH_KEY = 0x9e3779b97f4a7c15L;
+
+    /** Number of threads counting root moves. */
+    private final int _threads;
+    /** The table's keys, each XORed with its count, or null if there is
+     *  no table. */
+    private final long[] _keys;
+    /** The table's counts. */
+    private final long[] _counts;
+    /** Mask selecting a table index from a key. */
+    private final int _mask;
+}
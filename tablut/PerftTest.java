@@ -0,0 +1,78 @@
+package tablut;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Perft class.
+ *  @author ANUJS
+ */
+public class PerftTest {
+
+    /** Counts of move sequences from the initial position, by depth. */
+    private static final long[] INITIAL_COUNTS = { 1, 80, 4400, 353200 };
+
+    /** Return the number of sequences of DEPTH legal moves from BOARD,
+     *  counted directly with the list form of Board.legalMoves. */
+    private long slowCount(Board board, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (board.winner() != null) {
+            return 0;
+        }
+        long total = 0;
+        List<Move> moves = board.legalMoves(board.turn());
+        for (Move move : moves) {
+            board.makeMove(move);
+            total += slowCount(board, depth - 1);
+            board.undo();
+        }
+        return total;
+    }
+
+    /** Check PERFT's counts and divided counts against the direct count
+     *  from B to depths 1 to 3. */
+    private void checkCounts(Perft perft, Board b) {
+        for (int depth = 1; depth <= 3; depth += 1) {
+            long expected = slowCount(b, depth);
+            assertEquals(expected, perft.count(b, depth));
+            int[] moves = new int[Board.MAX_MOVES];
+            long[] divided = perft.divide(b, depth, moves);
+            long total = 0;
+            for (int i = 0; i < divided.length; i += 1) {
+                Board child = new Board(b);
+                child.makeMove(moves[i]);
+                assertEquals(slowCount(child, depth - 1), divided[i]);
+                total += divided[i];
+            }
+            assertEquals(expected, total);
+        }
+    }
+
+    @Test
+    public void testInitialPosition() {
+        Perft[] counters = {
+            new Perft(1, 0), new Perft(2, 0), new Perft(2, 1)
+        };
+        for (Perft perft : counters) {
+            for (int depth = 0; depth <= 3; depth += 1) {
+                assertEquals(INITIAL_COUNTS[depth],
+                             perft.count(new Board(), depth));
+            }
+        }
+    }
+
+    @Test
+    public void testMidgame() throws IOException {
+        Suite suite = Suite.standard();
+        Perft plain = new Perft(2, 0), hashed = new Perft(2, 1);
+        for (int k = 0; k < suite.size(); k += 3) {
+            checkCounts(plain, suite.position(k));
+            checkCounts(hashed, suite.position(k));
+        }
+    }
+
+}
@@ -39,6 +39,11 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** Stop any thinking I am doing on my opponent's time, and wait for
+     *  it to end.  By default, does nothing. */
+    void stopPondering() {
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
@@ -0,0 +1,180 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** A stack of 64-bit position keys that also answers, in constant
+ *  expected time, whether a key is currently on the stack.  Used by Board
+ *  to detect repeated positions without comparing whole boards.
+ *  @author ANUJS
+ */
+final class PositionHistory {
+
+    /** Initial capacity of the stack and of the key table (a power of
+     *  two). */
+    private static final int INITIAL_SIZE = 256;
+
+    /** An empty history. */
+    PositionHistory() {
+        _stack = new long[INITIAL_SIZE];
+        _keys = new long[2 * INITIAL_SIZE];
+        _counts = new int[2 * INITIAL_SIZE];
+    }
+
+    /** A copy of MODEL. */
+    PositionHistory(PositionHistory model) {
+        _stack = model._stack.clone();
+        _keys = model._keys.clone();
+        _counts = model._counts.clone();
+        _size = model._size;
+        _used = model._used;
+    }
+
+    /** Make me a copy of MODEL, reusing my storage where possible. */
+    void copy(PositionHistory model) {
+        if (_stack.length < model._size) {
+            _stack = new long[model._stack.length];
+        }
+        System.arraycopy(model._stack, 0, _stack, 0, model._size);
+        _size = model._size;
+        if (_keys.length == model._keys.length) {
+            System.arraycopy(model._keys, 0, _keys, 0, _keys.length);
+            System.arraycopy(model._counts, 0, _counts, 0, _counts.length);
+        } else {
+            _keys = model._keys.clone();
+            _counts = model._counts.clone();
+        }
+        _used = model._used;
+    }
+
+    /** Remove all keys. */
+    void clear() {
+        _size = _used = 0;
+        Arrays.fill(_keys, 0L);
+        Arrays.fill(_counts, 0);
+    }
+
+    /** Return the number of keys on the stack. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff KEY is currently on the stack. */
+    boolean contains(long key) {
+        int mask = _keys.length - 1;
+        for (int i = slot(key); _counts[i] != 0; i = (i + 1) & mask) {
+            if (_keys[i] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Push KEY on the stack. */
+    void push(long key) {
+        if (_size == _stack.length) {
+            _stack = Arrays.copyOf(_stack, 2 * _size);
+        }
+        _stack[_size] = key;
+        _size += 1;
+        int i = find(key);
+        if (_counts[i] == 0) {
+            _used += 1;
+        }
+        _keys[i] = key;
+        _counts[i] += 1;
+        if (2 * _used > _keys.length) {
+            rehash(Math.max(_size, INITIAL_SIZE));
+        }
+    }
+
+    /** Pop and return the top key.  The stack must not be empty. */
+    long pop() {
+        _size -= 1;
+        long key = _stack[_size];
+        int i = find(key);
+        _counts[i] -= 1;
+        if (_counts[i] == 0) {
+            remove(i);
+        }
+        return key;
+    }
+
+    /** Make room for COUNT more keys to be pushed without allocating. */
+    void reserve(int count) {
+        int capacity = _size + count;
+        if (_stack.length < capacity) {
+            _stack = Arrays.copyOf(_stack, capacity);
+        }
+        if (2 * capacity > _keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    /** Return the top key.  The stack must not be empty. */
+    long top() {
+        return _stack[_size - 1];
+    }
+
+    /** Return the home slot of KEY in _keys. */
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & (_keys.length - 1);
+    }
+
+    /** Return the slot holding KEY, or the free slot where it belongs. */
+    private int find(long key) {
+        int mask = _keys.length - 1;
+        int i = slot(key);
+        while (_counts[i] != 0 && _keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /** Free slot I of _keys, moving later keys of its cluster back so
+     *  that each stays reachable from its home slot. */
+    private void remove(int i) {
+        int mask = _keys.length - 1;
+        _keys[i] = 0;
+        _used -= 1;
+        for (int j = (i + 1) & mask; _counts[j] != 0; j = (j + 1) & mask) {
+            int home = slot(_keys[j]);
+            boolean stays = i <= j ? i < home && home <= j
+                : i < home || home <= j;
+            if (!stays) {
+                _keys[i] = _keys[j];
+                _counts[i] = _counts[j];
+                _keys[j] = 0;
+                _counts[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    /** Rebuild the key table with room for at least CAPACITY keys at
+     *  load factor 1/2. */
+    private void rehash(int capacity) {
+        _keys = new long[Integer.highestOneBit(capacity) * 4];
+        _counts = new int[_keys.length];
+        _used = 0;
+        for (int k = 0; k < _size; k += 1) {
+            int i = find(_stack[k]);
+            if (_counts[i] == 0) {
+                _keys[i] = _stack[k];
+                _used += 1;
+            }
+            _counts[i] += 1;
+        }
+    }
+
+    /** The keys in order of pushing; the first _size are valid. */
+    private long[] _stack;
+    /** Number of keys on the stack. */
+    private int _size;
+    /** Open-addressed table of the distinct keys on the stack.  A slot is
+     *  free iff its count is 0, in which case its key is also 0. */
+    private long[] _keys;
+    /** _counts[i] is the number of times _keys[i] is on the stack. */
+    private int[] _counts;
+    /** Number of non-free slots in _keys. */
+    private int _used;
+}
@@ -0,0 +1,140 @@
+package tablut;
+
+import static java.lang.Math.*;
+
+import static tablut.Utils.*;
+
+/** Depth reductions for the selective search of AI, with the parameters
+ *  that determine them.  A late move reduction shortens the search of a
+ *  quiet move tried late at a node; it grows with the logarithms of the
+ *  remaining depth and of the move's number at the node.  A null move
+ *  reduction shortens the search that follows passing the turn; it grows
+ *  linearly with depth.  Both are tabulated on construction.
+ *
+ *  The parameters may be given as a string of NAME=VALUE settings
+ *  separated by commas (see parse), with these NAMEs:
+ *    late-base      constant term of late move reductions.
+ *    late-divisor   divisor of the logarithmic term of late move
+ *                   reductions.
+ *    late-moves     number of moves at a node that are never reduced.
+ *    late-depth     least remaining depth at which moves are reduced.
+ *    null-base      constant term of null move reductions.
+ *    null-divisor   depth divisor of null move reductions.
+ *    null-depth     least remaining depth at which to try a null move.
+ *  @author ANUJS
+ */
+final class Reductions {
+
+    /** The default reductions. */
+    static final Reductions DEFAULT = parse("");
+
+    /** Largest depth and move number tabulated. */
+    private static final int TABLE_SIZE = 64;
+
+    /** Reductions with parameters given by SPEC (see above), taking
+     *  default values for those not mentioned. */
+    static Reductions parse(String spec) {
+        Reductions result = new Reductions();
+        for (String setting : spec.split(",")) {
+            if (setting.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = setting.split("=", 2);
+            if (parts.length != 2) {
+                throw error("bad reduction setting: %s", setting);
+            }
+            String name = parts[0].trim();
+            double value;
+            try {
+                value = Double.parseDouble(parts[1].trim());
+            } catch (NumberFormatException excp) {
+                throw error("bad value for %s: %s", name, parts[1]);
+            }
+            if (value < 0 || (name.equals("late-divisor") && value == 0)
+                || (name.equals("null-divisor") && value < 1)) {
+                throw error("value out of range for %s: %s", name, parts[1]);
+            }
+            switch (name) {
+            case "late-base":
+                result._lateBase = value;
+                break;
+            case "late-divisor":
+                result._lateDivisor = value;
+                break;
+            case "late-moves":
+                result._lateMoves = (int) value;
+                break;
+            case "late-depth":
+                result._lateDepth = (int) value;
+                break;
+            case "null-base":
+                result._nullBase = (int) value;
+                break;
+            case "null-divisor":
+                result._nullDivisor = (int) value;
+                break;
+            case "null-depth":
+                result._nullDepth = (int) value;
+                break;
+            default:
+                throw error("unknown reduction parameter: %s", name);
+            }
+        }
+        result.tabulate();
+        return result;
+    }
+
+    /** Reductions with the default parameters, not yet tabulated. */
+    private Reductions() {
+    }
+
+    /** Return the reduction of the search of quiet move number MOVENUM
+     *  (numbering from 1) at a node with remaining DEPTH.  If PV, the node
+     *  is on the principal variation, which is reduced one ply less. */
+    int lateMove(int depth, int moveNum, boolean pv) {
+        if (depth < _lateDepth || moveNum <= _lateMoves) {
+            return 0;
+        }
+        int d = min(depth, TABLE_SIZE - 1), m = min(moveNum, TABLE_SIZE - 1);
+        int r = _late[d][m];
+        return pv ? max(r - 1, 0) : r;
+    }
+
+    /** Return the reduction of the search following a null move at a node
+     *  with remaining DEPTH, or -1 if no null move is to be tried. */
+    int nullMove(int depth) {
+        if (depth < _nullDepth) {
+            return -1;
+        }
+        return _nullBase + depth / _nullDivisor;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("late-base=%s,late-divisor=%s,late-moves=%d,"
+                             + "late-depth=%d,null-base=%d,null-divisor=%d,"
+                             + "null-depth=%d",
+                             _lateBase, _lateDivisor, _lateMoves, _lateDepth,
+                             _nullBase, _nullDivisor, _nullDepth);
+    }
+
+    /** Fill in _late from the parameters. */
+    private void tabulate() {
+        for (int d = 1; d < TABLE_SIZE; d += 1) {
+            for (int m = 1; m < TABLE_SIZE; m += 1) {
+                _late[d][m] =
+                    (int) (_lateBase + log(d) * log(m) / _lateDivisor);
+            }
+        }
+    }
+
+    /** Parameters of late move reductions (see above). */
+    private double _lateBase = 0.75, _lateDivisor = 2.25;
+    /** Parameters of late move reductions (see above). */
+    private int _lateMoves = 3, _lateDepth = 3;
+    /** Parameters of null move reductions (see above). */
+    private int _nullBase = 2, _nullDivisor = 4, _nullDepth = 3;
+    /** _late[d][m] is the late move reduction at depth d of move number
+     *  m, before the adjustments made by lateMove. */
+    private final int[][] _late = new int[TABLE_SIZE][TABLE_SIZE];
+}
@@ -0,0 +1,38 @@
+package tablut;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A Java Flight Recorder event for one iteration of an AI's search,
+ *  from its start until it completes or runs out of budget.  Only the
+ *  main search thread records these.  As in all JFR events, the fields
+ *  are named as they appear in recordings.
+ *  @author ANUJS
+ */
+@Name("tablut.SearchIteration")
+@Label("Search Iteration")
+@Category("Tablut")
+@Description("One iteration of the iterative-deepening search")
+@StackTrace(false)
+final class SearchEvent extends Event {
+
+    /** The depth of the iteration. */
+    @Label("Depth")
+    int depth;
+
+    /** The number of nodes visited by the iteration, in all threads. */
+    @Label("Nodes")
+    long nodes;
+
+    /** The value found by the iteration, if it completed. */
+    @Label("Score")
+    int score;
+
+    /** True iff the iteration completed. */
+    @Label("Completed")
+    boolean completed;
+}
@@ -0,0 +1,196 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static java.lang.Math.max;
+
+/** Statistics of a search: the number of nodes and of quiescence nodes
+ *  visited, the selective depth (the greatest ply reached, including
+ *  quiescence search), how many of the cutoffs came from the first move
+ *  tried, the number of transposition table probes and hits, and for
+ *  each completed iteration, the nodes visited and time taken so far.
+ *
+ *  Each searching thread counts into a SearchStats of its own, without
+ *  locking or shared writes.  The thread in charge of the search sums
+ *  them into another at the end of each iteration (see collect and
+ *  endIteration).  The counts it reads from threads still searching
+ *  are then only approximate.
+ *  @author ANUJS
+ */
+final class SearchStats {
+
+    /** Forget everything. */
+    void clear() {
+        clearCounts();
+        _iterations = 0;
+    }
+
+    /** Note the visit of a quiescence node at PLY. */
+    void quiescenceNode(int ply) {
+        _quiescenceNodes += 1;
+        _selDepth = max(_selDepth, ply);
+    }
+
+    /** Note the visit of a full-width node at PLY. */
+    void node(int ply) {
+        _selDepth = max(_selDepth, ply);
+    }
+
+    /** Note a cutoff produced by move number K (numbered from 1) of a
+     *  full-width node. */
+    void cutoff(int k) {
+        _cutoffs += 1;
+        if (k == 1) {
+            _firstMoveCutoffs += 1;
+        }
+    }
+
+    /** Note a transposition table probe, which HIT iff it found an
+     *  entry. */
+    void probe(boolean hit) {
+        _probes += 1;
+        if (hit) {
+            _hits += 1;
+        }
+    }
+
+    /** Replace my counts with the sum of those in EACH, keeping my
+     *  record of iterations. */
+    void collect(Iterable<SearchStats> each) {
+        clearCounts();
+        for (SearchStats stats : each) {
+            _quiescenceNodes += stats._quiescenceNodes;
+            _selDepth = max(_selDepth, stats._selDepth);
+            _cutoffs += stats._cutoffs;
+            _firstMoveCutoffs += stats._firstMoveCutoffs;
+            _probes += stats._probes;
+            _hits += stats._hits;
+        }
+    }
+
+    /** Record the completion of iteration DEPTH after NODES nodes in all
+     *  and MILLIS milliseconds since the start of the search. */
+    void endIteration(int depth, long nodes, long millis) {
+        if (_iterations == _depths.length) {
+            _depths = Arrays.copyOf(_depths, 2 * _iterations);
+            _nodes = Arrays.copyOf(_nodes, 2 * _iterations);
+            _millis = Arrays.copyOf(_millis, 2 * _iterations);
+        }
+        _depths[_iterations] = depth;
+        _nodes[_iterations] = nodes;
+        _millis[_iterations] = millis;
+        _iterations += 1;
+    }
+
+    /** Return the number of iterations recorded. */
+    int iterations() {
+        return _iterations;
+    }
+
+    /** Return the depth of iteration K. */
+    int depth(int k) {
+        return _depths[k];
+    }
+
+    /** Return the number of nodes visited by the end of iteration K. */
+    long nodes(int k) {
+        return _nodes[k];
+    }
+
+    /** Return the time in milliseconds taken by iteration K alone, which
+     *  is never negative even though a pondering search restarts its
+     *  clock on a ponder hit. */
+    long iterationMillis(int k) {
+        return max(_millis[k] - (k == 0 ? 0 : _millis[k - 1]), 0);
+    }
+
+    /** Return the effective branching factor of iteration K: the ratio
+     *  of the nodes it visited to those of the iteration before, or 0
+     *  for the first. */
+    double branchingFactor(int k) {
+        if (k == 0) {
+            return 0.0;
+        }
+        long previous = _nodes[k - 1] - (k == 1 ? 0 : _nodes[k - 2]);
+        return previous == 0 ? 0.0
+            : (double) (_nodes[k] - _nodes[k - 1]) / previous;
+    }
+
+    /** Return the number of nodes visited by the end of the last
+     *  iteration recorded, or 0 if none. */
+    long nodes() {
+        return _iterations == 0 ? 0 : _nodes[_iterations - 1];
+    }
+
+    /** Return the number of quiescence nodes counted. */
+    long quiescenceNodes() {
+        return _quiescenceNodes;
+    }
+
+    /** Return the greatest ply reached. */
+    int selDepth() {
+        return _selDepth;
+    }
+
+    /** Return the fraction of cutoffs produced by the first move tried,
+     *  or 0 if there were none. */
+    double firstMoveCutoffRate() {
+        return _cutoffs == 0 ? 0.0 : (double) _firstMoveCutoffs / _cutoffs;
+    }
+
+    /** Return the number of transposition table probes. */
+    long probes() {
+        return _probes;
+    }
+
+    /** Return the fraction of probes that hit, or 0 if there were
+     *  none. */
+    double hitRate() {
+        return _probes == 0 ? 0.0 : (double) _hits / _probes;
+    }
+
+    /** Return a one-line summary of the last iteration recorded. */
+    String iterationReport() {
+        int k = _iterations - 1;
+        long nodes = nodes();
+        return String.format("depth %d/%d, %d nodes (%.1f%% quiescence),"
+                             + " %.1f%% first-move cutoffs,"
+                             + " %d probes (%.1f%% hits), ebf %.2f, %d ms",
+                             _depths[k], _selDepth, nodes,
+                             nodes == 0 ? 0.0
+                             : 100.0 * _quiescenceNodes / nodes,
+                             100.0 * firstMoveCutoffRate(), _probes,
+                             100.0 * hitRate(), branchingFactor(k),
+                             iterationMillis(k));
+    }
+
+    /** Set my counts, but not my record of iterations, to zero. */
+    private void clearCounts() {
+        _quiescenceNodes = _cutoffs = _firstMoveCutoffs = 0;
+        _probes = _hits = 0;
+        _selDepth = 0;
+    }
+
+    /** Number of quiescence nodes visited. */
+    private long _quiescenceNodes;
+    /** Greatest ply reached. */
+    private int _selDepth;
+    /** Number of cutoffs in full-width nodes. */
+    private long _cutoffs;
+    /** Number of those cutoffs produced by the first move tried. */
+    private long _firstMoveCutoffs;
+    /** Number of transposition table probes. */
+    private long _probes;
+    /** Number of those probes that found an entry. */
+    private long _hits;
+    /** Number of iterations recorded. */
+    private int _iterations;
+    /** For each iteration recorded, its depth, the number of nodes
+     *  visited by its end, and the time in milliseconds from the start
+     *  of the search to its end. */
+    private int[] _depths = new int[8];
+    /** See _depths. */
+    private long[] _nodes = new long[8];
+    /** See _depths. */
+    private long[] _millis = new long[8];
+}
@@ -0,0 +1,270 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static java.lang.Math.*;
+
+import static tablut.Piece.*;
+
+/** A solver for forced wins: a depth-first proof-number search (df-pn)
+ *  that tries to prove that the side to move, the attacker, can force a
+ *  win by a sequence of threats.  White's threats are king moves to the
+ *  edge or to a square with an open line to it (see
+ *  Board.kingRunMoves); black's are moves that capture the king or that
+ *  leave a capture of the king available.  The defender considers only
+ *  the moves that parry the threat, since any other loses at once.  The
+ *  search is limited to a node budget, and so either proves a win,
+ *  refutes it (no sequence of threats wins), or gives up.
+ *
+ *  Each node has a proof number phi and a disproof number delta, from
+ *  the point of view of the side to move: phi is the least number of
+ *  leaves that must be shown to win for it to win, and delta the least
+ *  number that must be shown to lose for it to lose.  A node's phi is
+ *  the least delta of its children and its delta the sum of their phis.
+ *  The search always expands the child with the least delta, staying
+ *  below it until that child's numbers exceed thresholds derived from
+ *  its siblings', and records the numbers of the nodes it leaves in a
+ *  table keyed by Board.hash.
+ *  @author ANUJS
+ */
+final class Solver {
+
+    /** Default node budget. */
+    static final long DEFAULT_NODES = 1_000_000;
+
+    /** A solver that gives up after visiting NODES positions. */
+    Solver(long nodes) {
+        _nodeLimit = nodes;
+    }
+
+    /** Try to prove a forced win for the side to move in POSITION, and
+     *  return that side if there is one, or null if there is none or the
+     *  node budget runs out first (see refuted).  POSITION is not
+     *  modified. */
+    Piece solve(Board position) {
+        Board board = new Board(position);
+        _attacker = board.turn();
+        _nodes = 0;
+        _lineLength = 0;
+        _refuted = false;
+        Arrays.fill(_keys, 0L);
+        if (board.winner() != null) {
+            return null;
+        }
+        mid(board, 0, INF, INF);
+        lookup(board.hash());
+        if (_phi == 0) {
+            extractLine(board);
+            return _attacker;
+        }
+        _refuted = _delta == 0;
+        return null;
+    }
+
+    /** Return true iff the last solve finished without finding a win. */
+    boolean refuted() {
+        return _refuted;
+    }
+
+    /** Return the number of positions visited by the last solve. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return a winning line found by the last solve, as packed moves
+     *  starting with the attacker's first move, or an empty array if it
+     *  found none.  The defender's moves are arbitrary parries. */
+    int[] line() {
+        return Arrays.copyOf(_line, _lineLength);
+    }
+
+    /** Expand BOARD, PLY plies from the root, until its phi reaches
+     *  THPHI or its delta reaches THDELTA, or the budget runs out, and
+     *  record its numbers in the table. */
+    private void mid(Board board, int ply, int thPhi, int thDelta) {
+        _nodes += 1;
+        long key = board.hash();
+        if (ply >= MAX_PLY) {
+            if (board.turn() == _attacker) {
+                store(key, INF, 0);
+            } else {
+                store(key, 0, INF);
+            }
+            return;
+        }
+        int[] moves = _moves[ply];
+        int n = moves(board, moves);
+        while (true) {
+            int phi = INF, delta = 0, best = -1, bestPhi = 0, delta2 = INF;
+            for (int i = 0; i < n; i += 1) {
+                child(board, moves[i]);
+                if (_delta < phi) {
+                    delta2 = phi;
+                    phi = _delta;
+                    bestPhi = _phi;
+                    best = i;
+                } else if (_delta < delta2) {
+                    delta2 = _delta;
+                }
+                delta = min(delta + _phi, INF);
+            }
+            if (phi >= thPhi || delta >= thDelta || _nodes >= _nodeLimit) {
+                store(key, phi, delta);
+                return;
+            }
+            long childThPhi = (long) thDelta - delta + bestPhi;
+            int childThDelta = min(thPhi, delta2 + 1);
+            board.makeMove(moves[best]);
+            mid(board, ply + 1, (int) min(childThPhi, INF), childThDelta);
+            board.unmakeMove();
+        }
+    }
+
+    /** Set _phi and _delta to the numbers of the position after MOVE on
+     *  BOARD: exact if the move ends the game, else from the table, else
+     *  1 each. */
+    private void child(Board board, int move) {
+        board.makeMove(move);
+        Piece winner = board.winner();
+        if (winner == null) {
+            lookup(board.hash());
+        } else if (winner == board.turn()) {
+            _phi = 0;
+            _delta = INF;
+        } else {
+            _phi = INF;
+            _delta = 0;
+        }
+        board.unmakeMove();
+    }
+
+    /** Store the moves to be considered on BOARD into MOVES and return
+     *  their number: the attacker's threats, or the defender's parries. */
+    private int moves(Board board, int[] moves) {
+        if (board.turn() == _attacker && _attacker == WHITE) {
+            return board.kingRunMoves(moves, 0);
+        }
+        int all = board.legalMoves(board.turn(), _scratch), n = 0;
+        for (int i = 0; i < all; i += 1) {
+            board.makeMove(_scratch[i]);
+            boolean keep;
+            if (board.winner() != null) {
+                keep = true;
+            } else if (board.turn() == _attacker) {
+                keep = !winsAtOnce(board);
+            } else {
+                board.makeNullMove();
+                keep = winsAtOnce(board);
+                board.unmakeMove();
+            }
+            board.unmakeMove();
+            if (keep) {
+                moves[n] = _scratch[i];
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Return true iff the side to move on BOARD, which must be the
+     *  attacker, has a move that wins at once. */
+    private boolean winsAtOnce(Board board) {
+        if (_attacker == WHITE) {
+            return board.kingEscapeLines() > 0;
+        }
+        int n = board.captureMoves(BLACK, _captures);
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(_captures[i]);
+            boolean won = board.winner() == BLACK;
+            board.unmakeMove();
+            if (won) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Record in _line a winning line from BOARD, which has been proven
+     *  a win for the attacker, as far as the table allows.  Where the
+     *  defender has no parry, the line continues with any of its moves. */
+    private void extractLine(Board board) {
+        while (_lineLength < MAX_PLY && board.winner() == null) {
+            int n = moves(board, _moves[0]), next = 0;
+            if (n == 0 && board.turn() != _attacker
+                && board.legalMoves(board.turn(), _moves[0]) > 0) {
+                next = _moves[0][0];
+            }
+            for (int i = 0; i < n && next == 0; i += 1) {
+                child(board, _moves[0][i]);
+                if (board.turn() == _attacker ? _delta == 0 : _phi == 0) {
+                    next = _moves[0][i];
+                }
+            }
+            if (next == 0) {
+                break;
+            }
+            _line[_lineLength] = next;
+            _lineLength += 1;
+            board.makeMove(next);
+        }
+    }
+
+    /** Set _phi and _delta to the numbers recorded for KEY, or to 1 each
+     *  if there are none. */
+    private void lookup(long key) {
+        int i = (int) key & TABLE_MASK;
+        if (_keys[i] == key) {
+            _phi = _phis[i];
+            _delta = _deltas[i];
+        } else {
+            _phi = _delta = 1;
+        }
+    }
+
+    /** Record PHI and DELTA for KEY, replacing whatever shares its
+     *  slot. */
+    private void store(long key, int phi, int delta) {
+        int i = (int) key & TABLE_MASK;
+        _keys[i] = key;
+        _phis[i] = phi;
+        _deltas[i] = delta;
+    }
+
+    /** A proof or disproof number that marks a proven result. */
+    private static final int INF = Integer.MAX_VALUE / 2;
+
+    /** The greatest length of line searched. */
+    private static final int MAX_PLY = 64;
+
+    /** Log base 2 of the number of table entries. */
+    private static final int TABLE_BITS = 18;
+
+    /** Mask selecting a table index from a key. */
+    private static final int TABLE_MASK = (1 << TABLE_BITS) - 1;
+
+    /** Node budget. */
+    private final long _nodeLimit;
+    /** Number of positions visited by the current solve. */
+    private long _nodes;
+    /** The side trying to force a win in the current solve. */
+    private Piece _attacker;
+    /** True iff the last solve refuted the attacker's win. */
+    private boolean _refuted;
+    /** Numbers set by lookup and child. */
+    private int _phi, _delta;
+    /** The table of proof and disproof numbers: _phis[i] and _deltas[i]
+     *  belong to the position with key _keys[i]. */
+    private final long[] _keys = new long[1 << TABLE_BITS];
+    /** See _keys. */
+    private final int[] _phis = new int[1 << TABLE_BITS],
+        _deltas = new int[1 << TABLE_BITS];
+    /** Move buffers: _moves[p] holds the moves at ply p. */
+    private final int[][] _moves = new int[MAX_PLY][Board.MAX_MOVES];
+    /** Buffers for the moves examined by moves and winsAtOnce. */
+    private final int[] _scratch = new int[Board.MAX_MOVES],
+        _captures = new int[Board.MAX_MOVES];
+    /** The winning line found by the last solve, and its length. */
+    private final int[] _line = new int[MAX_PLY];
+    /** See _line. */
+    private int _lineLength;
+}
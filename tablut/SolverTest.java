@@ -0,0 +1,77 @@
+package tablut;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Piece.*;
+import static tablut.Square.sq;
+
+/** Tests of the Solver class.
+ *  @author ANUJS
+ */
+public class SolverTest {
+
+    /** Return a board with TURN to move holding just PIECES, each a
+     *  piece letter (K, W, or B) followed by a square. */
+    static Board position(Piece turn, String... pieces) {
+        Board b = new Board();
+        for (Square s : Square.SQUARE_LIST) {
+            b.put(EMPTY, s);
+        }
+        for (String piece : pieces) {
+            Piece p = piece.charAt(0) == 'K' ? KING
+                : piece.charAt(0) == 'W' ? WHITE : BLACK;
+            b.put(p, sq(piece.substring(1)));
+        }
+        if (b.turn() != turn) {
+            b.makeNullMove();
+        }
+        b.clearUndo();
+        return b;
+    }
+
+    /** Check that SOLVER's line from B is legal and ends in a win for
+     *  WINNER. */
+    private void checkLine(Solver solver, Board b, Piece winner) {
+        int[] line = solver.line();
+        assertTrue(line.length > 0);
+        for (int move : line) {
+            assertTrue(b.isLegal(Move.mv(move)));
+            b.makeMove(move);
+        }
+        assertSame(winner, b.winner());
+    }
+
+    @Test
+    public void testForcedEscape() {
+        Board b = position(WHITE, "Kd4", "Bd2", "Bd8", "Bb4", "Bh4");
+        Solver solver = new Solver(Solver.DEFAULT_NODES);
+        assertSame(WHITE, solver.solve(b));
+        assertEquals(3, solver.line().length);
+        assertEquals(Move.mv("d4-5").packed(), solver.line()[0]);
+        checkLine(solver, b, WHITE);
+    }
+
+    @Test
+    public void testForcedCapture() {
+        Board b = position(BLACK, "Kg7", "Bf7", "Bh3", "Wa1");
+        Solver solver = new Solver(Solver.DEFAULT_NODES);
+        assertSame(BLACK, solver.solve(b));
+        assertArrayEquals(new int[] { Move.mv("h3-7").packed() },
+                          solver.line());
+        checkLine(solver, b, BLACK);
+    }
+
+    @Test
+    public void testNoWin() {
+        Solver solver = new Solver(Solver.DEFAULT_NODES);
+        Board b = position(BLACK, "Kg7", "Bf8", "Bh3", "Bc6", "Wa1");
+        assertNull(solver.solve(b));
+        assertTrue(solver.refuted());
+        assertEquals(0, solver.line().length);
+        b = new Board();
+        assertNull(solver.solve(b));
+        assertEquals(0, solver.line().length);
+    }
+
+}
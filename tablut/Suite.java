@@ -0,0 +1,138 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static tablut.Utils.*;
+
+/** A fixed set of positions for measuring the speed of the search, in
+ *  particular the time it takes to reach a given depth with a given
+ *  number of threads.  The standard set is in the file suite.txt beside
+ *  this class.  In a suite file, each line holds the name of a position
+ *  followed by the moves that lead to it from the initial position.
+ *  Blank lines and lines starting with # are ignored.
+ *  @author ANUJS
+ */
+final class Suite {
+
+    /** Depth of the searches of bench by default. */
+    static final int BENCH_DEPTH = 5;
+
+    /** Name of the resource holding the standard suite. */
+    static final String STANDARD = "suite.txt";
+
+    /** The suite read from IN. */
+    Suite(InputStream in) throws IOException {
+        BufferedReader lines = new BufferedReader(new InputStreamReader(in));
+        for (String line = lines.readLine(); line != null;
+             line = lines.readLine()) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            Board board = new Board();
+            for (int i = 1; i < words.length; i += 1) {
+                Move move = Move.mv(words[i]);
+                if (move == null || !board.isLegal(move)
+                    || board.winner() != null) {
+                    throw error("bad move in position %s: %s",
+                                words[0], words[i]);
+                }
+                board.makeMove(move);
+            }
+            board.clearUndo();
+            _names.add(words[0]);
+            _positions.add(board);
+        }
+    }
+
+    /** The standard suite. */
+    static Suite standard() throws IOException {
+        return new Suite(getResource(STANDARD));
+    }
+
+    /** Return the number of positions. */
+    int size() {
+        return _positions.size();
+    }
+
+    /** Return the name of position K. */
+    String name(int k) {
+        return _names.get(k);
+    }
+
+    /** Return position K. */
+    Board position(int k) {
+        return _positions.get(k);
+    }
+
+    /** Search each position to DEPTH with a fresh player created from
+     *  TEMPLATE, with no time or node limit, and report the time taken,
+     *  the depth reached (less than DEPTH if the search found a forced
+     *  result), and the number of nodes visited to OUT.  Each player has
+     *  a table of its own, unless TEMPLATE's is mapped from a file, which
+     *  they all share.  Returns the total time in milliseconds. */
+    long timeToDepth(AI template, int depth, PrintStream out) {
+        long totalMillis = 0, totalNodes = 0;
+        for (int k = 0; k < size(); k += 1) {
+            Board board = position(k);
+            AI player = player(template, board, depth);
+            long start = System.nanoTime();
+            Move move = player.search(board);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            out.printf("%-8s %-6s depth %2d %8d ms %12d nodes%n",
+                       name(k), move, player.depthReached(), millis,
+                       player.nodes());
+            totalMillis += millis;
+            totalNodes += player.nodes();
+        }
+        out.printf("%-8s %-6s          %8d ms %12d nodes%n",
+                   "total", "", totalMillis, totalNodes);
+        return totalMillis;
+    }
+
+    /** Search each position to DEPTH with the default settings of AI and
+     *  a single thread, and report the total number of nodes visited,
+     *  the time taken, and the nodes searched per second to OUT.  The
+     *  node count depends on nothing but the code of the search, so that
+     *  it serves as a signature of its behavior.  Returns the count. */
+    long bench(int depth, PrintStream out) {
+        AI template = new AI();
+        long nodes = 0;
+        long start = System.nanoTime();
+        for (int k = 0; k < size(); k += 1) {
+            AI player = player(template, position(k), depth);
+            player.search(position(k));
+            nodes += player.nodes();
+        }
+        long nanos = Math.max(System.nanoTime() - start, 1);
+        out.printf("bench %d: %d nodes, %d ms, %d nodes/s%n", depth, nodes,
+                   nanos / 1_000_000, (long) (nodes * 1e9 / nanos));
+        return nodes;
+    }
+
+    /** Return a fresh player created from TEMPLATE to search BOARD to
+     *  DEPTH with no time or node limit.  The player has a table of its
+     *  own, unless TEMPLATE's is mapped from a file. */
+    private AI player(AI template, Board board, int depth) {
+        AI player = (AI) template.create(board.turn(), null);
+        if (!template.table().mapped()) {
+            player.setHashSize(template.table().megabytes());
+        }
+        player.setTimeLimit(Long.MAX_VALUE);
+        player.setNodeLimit(0);
+        player.setDepthLimit(depth);
+        return player;
+    }
+
+    /** The names of my positions. */
+    private final List<String> _names = new ArrayList<>();
+    /** My positions, parallel to _names. */
+    private final List<Board> _positions = new ArrayList<>();
+}
@@ -0,0 +1,574 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.lang.Math.*;
+
+import static tablut.Bits.*;
+import static tablut.Piece.*;
+import static tablut.Square.*;
+import static tablut.Utils.*;
+
+/** Endgame tablebases: for every position with the king and a few other
+ *  pieces, the number of plies to the end of the game with best play,
+ *  found by retrograde analysis under the rules of Board.  Repetitions
+ *  and the move limit are ignored.
+ *
+ *  The entry for a position is a byte: UNKNOWN (0) if neither side can
+ *  force a win, INVALID (255) if the position cannot arise (two pieces on
+ *  a square, a piece other than the king on the throne, or the king on
+ *  the edge), and otherwise N + 1, where N is the number of plies to the
+ *  end of the game; the side to move wins iff N is odd.  A side with no
+ *  legal move loses.
+ *
+ *  The positions with W white pieces and B black pieces besides the king
+ *  form a class.  A tablebase file holds an 8-byte header (MAGIC and the
+ *  greatest number of pieces, PIECES) followed by the entries of each
+ *  class with at most PIECES pieces in all, in order of increasing size
+ *  and then decreasing W.  Within a class, the entry for side to move S
+ *  (0 for white), king square K, white squares WS, and black squares BS is
+ *  at ((S * NUM_SQUARES + K) * C(NUM_SQUARES, W) + rank(WS))
+ *  * C(NUM_SQUARES, B) + rank(BS), where the rank of squares
+ *  s1 < s2 < ... < sk is C(s1, 1) + C(s2, 2) + ... + C(sk, k).  Files are
+ *  read by mapping them into memory, so that only the parts probed are
+ *  ever read.
+ *
+ *  Generation solves the classes in order, so that every capture leads to
+ *  a class already solved.  Each class is solved by passes over its
+ *  positions: pass N settles the positions that end in exactly N plies,
+ *  which are those with a move to a position lost in fewer plies, and
+ *  those all of whose moves lead to positions won in fewer.  As a pass
+ *  ignores the entries it settles itself, its result does not depend on
+ *  the order in which it visits positions.  The passes are split among
+ *  threads by side to move and king square, and the file is the same
+ *  however many threads produce it.
+ *  @author ANUJS
+ */
+final class Tablebase {
+
+    /** Default number of pieces, including the king, to generate. */
+    static final int DEFAULT_PIECES = 3;
+
+    /** Greatest number of pieces, including the king, supported. */
+    static final int MAX_PIECES = 4;
+
+    /** Entry of a position that neither side can force a win from, or
+     *  that a tablebase does not cover. */
+    static final int UNKNOWN = 0;
+
+    /** Entry of a position that cannot arise. */
+    private static final int INVALID = 255;
+
+    /** Greatest number of plies to the end that an entry can hold. */
+    private static final int MAX_PLIES = INVALID - 2;
+
+    /** The first four bytes of a tablebase file ("TBLT"). */
+    private static final int MAGIC = 0x54424c54;
+
+    /** Size of a file's header in bytes. */
+    private static final int HEADER_SIZE = 8;
+
+    /** BINOM[n][k] is n choose k. */
+    private static final int[][] BINOM =
+        new int[NUM_SQUARES + 1][MAX_PIECES + 1];
+
+    static {
+        for (int n = 0; n <= NUM_SQUARES; n += 1) {
+            BINOM[n][0] = 1;
+            for (int k = 1; k <= MAX_PIECES && n > 0; k += 1) {
+                BINOM[n][k] = BINOM[n - 1][k - 1] + BINOM[n - 1][k];
+            }
+        }
+    }
+
+    /** Return the tablebase in the file named FILE, which is mapped into
+     *  memory. */
+    static Tablebase open(String file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer data =
+                in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+                                    in.length());
+            return new Tablebase(data, file);
+        }
+    }
+
+    /** The tablebase held in DATA, read from the file named NAME. */
+    private Tablebase(MappedByteBuffer data, String name) {
+        if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw error("%s is not a tablebase file", name);
+        }
+        _pieces = data.getInt(4);
+        if (_pieces < 1 || _pieces > MAX_PIECES) {
+            throw error("%s is not a tablebase file", name);
+        }
+        _offsets = new long[classes(_pieces)];
+        long offset = HEADER_SIZE;
+        for (int c = 0; c < _offsets.length; c += 1) {
+            _offsets[c] = offset;
+            offset += classSize(c);
+        }
+        if (data.capacity() != offset) {
+            throw error("tablebase file %s is truncated", name);
+        }
+        _data = data;
+    }
+
+    /** Return the greatest number of pieces, including the king, of the
+     *  positions I cover. */
+    int pieces() {
+        return _pieces;
+    }
+
+    /** Return my entry for the position on BOARD, or UNKNOWN if I do not
+     *  cover it. */
+    int probe(Board board) {
+        int king = board.kingIndex();
+        int whites = board.pieceCount(WHITE), blacks = board.pieceCount(BLACK);
+        if (king < 0 || 1 + whites + blacks > _pieces) {
+            return UNKNOWN;
+        }
+        long index = _offsets[classOf(whites, blacks)]
+            + index(board.turn() == WHITE ? 0 : 1, king,
+                    rank(board.piecesLo(WHITE), board.piecesHi(WHITE)),
+                    whites,
+                    rank(board.piecesLo(BLACK), board.piecesHi(BLACK)),
+                    blacks);
+        int value = _data.get((int) index) & 0xff;
+        return value == INVALID ? UNKNOWN : value;
+    }
+
+    /** Return true iff VALUE, an entry other than UNKNOWN, is a win for
+     *  the side to move. */
+    static boolean wins(int value) {
+        return value % 2 == 0;
+    }
+
+    /** Return the number of plies to the end of the game of a position
+     *  with entry VALUE, which is not UNKNOWN. */
+    static int plies(int value) {
+        return value - 1;
+    }
+
+    /** Return the packed legal move on BOARD that wins fastest, or else
+     *  loses slowest, according to me, or 0 if I do not know the value of
+     *  BOARD. */
+    int bestMove(Board board) {
+        if (board.winner() != null || probe(board) == UNKNOWN) {
+            return 0;
+        }
+        Piece mover = board.turn();
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = board.legalMoves(mover, moves);
+        int best = 0, bestKey = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(moves[i]);
+            int key, value = probe(board);
+            if (board.winner() != null) {
+                key = board.winner() == mover ? Integer.MAX_VALUE
+                    : Integer.MIN_VALUE + 1;
+            } else if (value == UNKNOWN) {
+                key = 0;
+            } else if (wins(value)) {
+                key = value - INVALID;
+            } else {
+                key = INVALID - value;
+            }
+            board.unmakeMove();
+            if (key > bestKey) {
+                bestKey = key;
+                best = moves[i];
+            }
+        }
+        return best;
+    }
+
+    /** Solve all positions with at most PIECES pieces, including the
+     *  king, with THREADS threads, and write the tablebase to the file
+     *  named FILE.  Report on each class to LOG as it is solved. */
+    static void generate(int pieces, int threads, String file,
+                         PrintStream log) throws IOException {
+        if (pieces < 1 || pieces > MAX_PIECES) {
+            throw error("tablebases hold 1 to %d pieces", MAX_PIECES);
+        }
+        byte[][] tables = new byte[classes(pieces)][];
+        ExecutorService pool = Executors.newFixedThreadPool(max(threads, 1));
+        try {
+            int longest = 0;
+            for (int c = 0; c < tables.length; c += 1) {
+                tables[c] = new byte[(int) classSize(c)];
+                longest = max(longest, solve(c, tables, longest, pool));
+                int won = 0, lost = 0, valid = 0;
+                for (byte entry : tables[c]) {
+                    int value = entry & 0xff;
+                    if (value != INVALID) {
+                        valid += 1;
+                        if (value != UNKNOWN) {
+                            won += wins(value) ? 1 : 0;
+                            lost += wins(value) ? 0 : 1;
+                        }
+                    }
+                }
+                log.printf("king+%dW+%dB: %d positions, %d won, %d lost,"
+                           + " longest %d plies%n", whites(c), blacks(c),
+                           valid, won, lost, longest);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(pieces);
+            for (byte[] table : tables) {
+                out.write(table);
+            }
+        }
+    }
+
+    /** Fill in the table of class C in TABLES, whose entries are all
+     *  UNKNOWN, given that the tables of the smaller classes are complete
+     *  and none of their games lasts more than LONGEST plies.  Runs the
+     *  passes in POOL, and returns the number of plies of the longest game
+     *  in class C. */
+    private static int solve(int c, byte[][] tables, int longest,
+                             ExecutorService pool) {
+        int result = 0;
+        for (int plies = 0; plies <= MAX_PLIES; plies += 1) {
+            List<Future<Integer>> slices = new ArrayList<>();
+            for (int side = 0; side < 2; side += 1) {
+                for (int king = 0; king < NUM_SQUARES; king += 1) {
+                    slices.add(pool.submit(new Slice(c, tables, side, king,
+                                                     plies)));
+                }
+            }
+            int settled = 0;
+            for (Future<Integer> slice : slices) {
+                try {
+                    settled += slice.get();
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(excp);
+                } catch (ExecutionException excp) {
+                    throw new IllegalStateException(excp.getCause());
+                }
+            }
+            if (settled > 0) {
+                result = plies;
+            } else if (plies > longest + 1) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /** One pass over the positions of a class with a given side to move
+     *  and king square.  Returns the number of positions it settles. */
+    private static final class Slice implements Callable<Integer> {
+
+        /** A pass over the positions with side to move SIDE and king on
+         *  the square with index KING in class C, whose table is in
+         *  TABLES, settling those that end in PLIES plies.  Pass 0 marks
+         *  the invalid positions and those with no legal move. */
+        Slice(int c, byte[][] tables, int side, int king, int plies) {
+            _tables = tables;
+            _table = tables[c];
+            _whites = whites(c);
+            _blacks = blacks(c);
+            _side = side;
+            _king = king;
+            _plies = plies;
+        }
+
+        @Override
+        public Integer call() {
+            int whiteRanks = BINOM[NUM_SQUARES][_whites],
+                blackRanks = BINOM[NUM_SQUARES][_blacks];
+            int base = (_side * NUM_SQUARES + _king) * whiteRanks * blackRanks;
+            boolean kingValid = !has(EDGE_LO, EDGE_HI, _king);
+            int throne = Board.THRONE.index(), settled = 0;
+            for (Square s : SQUARE_LIST) {
+                _board.put(EMPTY, s);
+            }
+            _board.put(KING, sq(_king));
+            int[] ws = firstCombination(_whites);
+            for (int rw = 0; rw < whiteRanks; rw += 1, next(ws)) {
+                boolean whitesValid = kingValid
+                    && !contains(ws, _king) && !contains(ws, throne);
+                place(ws, whitesValid ? WHITE : null);
+                int[] bs = firstCombination(_blacks);
+                for (int rb = 0; rb < blackRanks; rb += 1, next(bs)) {
+                    int index = base + rw * blackRanks + rb;
+                    if (_plies == 0) {
+                        if (!whitesValid || contains(bs, _king)
+                            || contains(bs, throne) || overlap(ws, bs)) {
+                            _table[index] = (byte) INVALID;
+                            continue;
+                        }
+                    } else if (_table[index] != UNKNOWN) {
+                        continue;
+                    }
+                    place(bs, BLACK);
+                    settled += settle(index, ws, bs);
+                    place(bs, EMPTY);
+                }
+                place(ws, whitesValid ? EMPTY : null);
+            }
+            return settled;
+        }
+
+        /** Set the entry with index INDEX, for the position on _board with
+         *  white pieces on WS and black pieces on BS, if it ends in _plies
+         *  plies.  Return 1 if it is settled, else 0. */
+        private int settle(int index, int[] ws, int[] bs) {
+            int n = _board.legalMoves(_side == 0 ? WHITE : BLACK, _moves);
+            if (_plies == 0) {
+                if (n == 0) {
+                    _table[index] = (byte) (_plies + 1);
+                    return 1;
+                }
+                return 0;
+            }
+            boolean open = false;
+            for (int i = 0; i < n; i += 1) {
+                int value = successor(_moves[i], ws, bs);
+                if (value == UNKNOWN || value == INVALID
+                    || plies(value) >= _plies) {
+                    open = true;
+                } else if (!wins(value)) {
+                    _table[index] = (byte) (_plies + 1);
+                    return 1;
+                }
+            }
+            if (open) {
+                return 0;
+            }
+            _table[index] = (byte) (_plies + 1);
+            return 1;
+        }
+
+        /** Return the entry of the position after the packed MOVE on
+         *  _board, whose white pieces are on WS and black pieces on BS.  A
+         *  move that ends the game leads to an entry of 1, a loss in 0
+         *  plies for the opponent. */
+        private int successor(int move, int[] ws, int[] bs) {
+            int from = Move.from(move), to = Move.to(move);
+            if (from == _king && has(EDGE_LO, EDGE_HI, to)) {
+                return 1;
+            }
+            int record = _board.captures(from, to);
+            int nw = copy(ws, _ws, from, to), nb = copy(bs, _bs, from, to);
+            for (int dir = 0; dir < 4; dir += 1) {
+                if ((record & (1 << dir)) != 0) {
+                    int victim = NEIGHBOR[4 * to + dir];
+                    if (victim == _king) {
+                        return 1;
+                    } else if (_side == 0) {
+                        nb = remove(_bs, nb, victim);
+                    } else {
+                        nw = remove(_ws, nw, victim);
+                    }
+                }
+            }
+            int king = from == _king ? to : _king;
+            long index = index(1 - _side, king, rank(_ws, nw), nw,
+                               rank(_bs, nb), nb);
+            return _tables[classOf(nw, nb)][(int) index] & 0xff;
+        }
+
+        /** Put PIECE on the squares in SQUARES, unless PIECE is null. */
+        private void place(int[] squares, Piece piece) {
+            if (piece != null) {
+                for (int s : squares) {
+                    _board.put(piece, sq(s));
+                }
+            }
+        }
+
+        /** The tables of all classes. */
+        private final byte[][] _tables;
+        /** The table of the class being solved. */
+        private final byte[] _table;
+        /** Numbers of white and black pieces in the class. */
+        private final int _whites, _blacks;
+        /** Side to move (0 for white) and king square of my positions. */
+        private final int _side, _king;
+        /** The pass (see Slice). */
+        private final int _plies;
+        /** The position being examined. */
+        private final Board _board = new Board();
+        /** The legal moves in _board. */
+        private final int[] _moves = new int[Board.MAX_MOVES];
+        /** The white and black squares after a move. */
+        private final int[] _ws = new int[MAX_PIECES],
+            _bs = new int[MAX_PIECES];
+    }
+
+    /** Return the number of classes of positions with at most PIECES
+     *  pieces. */
+    private static int classes(int pieces) {
+        return pieces * (pieces + 1) / 2;
+    }
+
+    /** Return the class of positions with WHITES white and BLACKS black
+     *  pieces besides the king. */
+    private static int classOf(int whites, int blacks) {
+        int size = 1 + whites + blacks;
+        return classes(size - 1) + size - 1 - whites;
+    }
+
+    /** Return the number of white pieces besides the king in class C. */
+    private static int whites(int c) {
+        int size = 1;
+        while (classes(size) <= c) {
+            size += 1;
+        }
+        return size - 1 - (c - classes(size - 1));
+    }
+
+    /** Return the number of black pieces in class C. */
+    private static int blacks(int c) {
+        int size = 1;
+        while (classes(size) <= c) {
+            size += 1;
+        }
+        return c - classes(size - 1);
+    }
+
+    /** Return the number of entries in class C. */
+    private static long classSize(int c) {
+        return 2L * NUM_SQUARES * BINOM[NUM_SQUARES][whites(c)]
+            * BINOM[NUM_SQUARES][blacks(c)];
+    }
+
+    /** Return the index within its class of the position with side to
+     *  move SIDE (0 for white), king on the square with index KING, WHITES
+     *  white pieces whose squares have rank WHITERANK, and BLACKS black
+     *  pieces whose squares have rank BLACKRANK. */
+    private static long index(int side, int king, int whiteRank, int whites,
+                              int blackRank, int blacks) {
+        return ((long) (side * NUM_SQUARES + king)
+                * BINOM[NUM_SQUARES][whites] + whiteRank)
+            * BINOM[NUM_SQUARES][blacks] + blackRank;
+    }
+
+    /** Return the rank of the set of squares LO, HI. */
+    private static int rank(long lo, long hi) {
+        int result = 0;
+        for (int k = 1, s = first(lo, hi); s >= 0; k += 1, s = first(lo, hi)) {
+            result += BINOM[s][k];
+            lo &= ~Bits.lo(s);
+            hi &= ~Bits.hi(s);
+        }
+        return result;
+    }
+
+    /** Return the rank of the increasing square indices SQUARES[0 .. N-1]. */
+    private static int rank(int[] squares, int n) {
+        int result = 0;
+        for (int i = 0; i < n; i += 1) {
+            result += BINOM[squares[i]][i + 1];
+        }
+        return result;
+    }
+
+    /** Return the set of K squares of least rank. */
+    private static int[] firstCombination(int k) {
+        int[] result = new int[k];
+        for (int i = 0; i < k; i += 1) {
+            result[i] = i;
+        }
+        return result;
+    }
+
+    /** Replace the increasing square indices SQUARES with the set of next
+     *  higher rank, if there is one. */
+    private static void next(int[] squares) {
+        for (int i = 0; i < squares.length; i += 1) {
+            int limit = i + 1 < squares.length ? squares[i + 1] : NUM_SQUARES;
+            if (squares[i] + 1 < limit) {
+                squares[i] += 1;
+                for (int j = 0; j < i; j += 1) {
+                    squares[j] = j;
+                }
+                return;
+            }
+        }
+    }
+
+    /** Return true iff SQUARES contains S. */
+    private static boolean contains(int[] squares, int s) {
+        for (int t : squares) {
+            if (t == s) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff SQUARES1 and SQUARES2 have a square in common. */
+    private static boolean overlap(int[] squares1, int[] squares2) {
+        for (int s : squares1) {
+            if (contains(squares2, s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Copy the increasing square indices SQUARES into RESULT, replacing
+     *  FROM, if present, by TO and keeping them increasing, and return
+     *  their number. */
+    private static int copy(int[] squares, int[] result, int from, int to) {
+        int n = squares.length;
+        System.arraycopy(squares, 0, result, 0, n);
+        for (int i = 0; i < n; i += 1) {
+            if (result[i] == from) {
+                result[i] = to;
+                for (; i > 0 && result[i - 1] > result[i]; i -= 1) {
+                    result[i] = result[i - 1];
+                    result[i - 1] = to;
+                }
+                for (; i + 1 < n && result[i + 1] < result[i]; i += 1) {
+                    result[i] = result[i + 1];
+                    result[i + 1] = to;
+                }
+                break;
+            }
+        }
+        return n;
+    }
+
+    /** Remove S from the increasing square indices SQUARES[0 .. N-1] and
+     *  return their new number. */
+    private static int remove(int[] squares, int n, int s) {
+        for (int i = 0; i < n; i += 1) {
+            if (squares[i] == s) {
+                System.arraycopy(squares, i + 1, squares, i, n - i - 1);
+                return n - 1;
+            }
+        }
+        return n;
+    }
+
+    /** Greatest number of pieces, including the king, in my positions. */
+    private final int _pieces;
+    /** Offsets in _data of the tables of each class. */
+    private final long[] _offsets;
+    /** The contents of my file. */
+    private final MappedByteBuffer _data;
+}
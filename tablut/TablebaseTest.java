@@ -0,0 +1,59 @@
+package tablut;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.Piece.*;
+import static tablut.SolverTest.position;
+
+/** Tests of the Tablebase class.
+ *  @author ANUJS
+ */
+public class TablebaseTest {
+
+    /** Return a tablebase of positions with up to 3 pieces, generated
+     *  into a temporary file. */
+    private Tablebase threePieces() throws IOException {
+        File file = File.createTempFile("tablut", ".tb");
+        file.deleteOnExit();
+        Tablebase.generate(3, 2, file.getPath(),
+                           new PrintStream(OutputStream.nullOutputStream()));
+        Tablebase result = Tablebase.open(file.getPath());
+        assertEquals(3, result.pieces());
+        return result;
+    }
+
+    @Test
+    public void testProbeAndBestMove() throws IOException {
+        Tablebase tablebase = threePieces();
+
+        Board won = position(BLACK, "Kg7", "Bf7", "Bh3");
+        int value = tablebase.probe(won);
+        assertTrue(Tablebase.wins(value));
+        assertEquals(1, Tablebase.plies(value));
+        assertEquals(Move.mv("h3-7").packed(), tablebase.bestMove(won));
+
+        Board lost = position(BLACK, "Kc4", "Bh8");
+        value = tablebase.probe(lost);
+        assertFalse(Tablebase.wins(value));
+        assertEquals(2, Tablebase.plies(value));
+        int move = tablebase.bestMove(lost);
+        assertTrue(lost.isLegal(Move.mv(move)));
+        lost.makeMove(move);
+        value = tablebase.probe(lost);
+        assertTrue(Tablebase.wins(value));
+        assertEquals(1, Tablebase.plies(value));
+        lost.makeMove(tablebase.bestMove(lost));
+        assertSame(WHITE, lost.winner());
+
+        Board tooMany = position(BLACK, "Kc4", "Bh8", "Bh7", "Wa2");
+        assertEquals(Tablebase.UNKNOWN, tablebase.probe(tooMany));
+        assertEquals(0, tablebase.bestMove(tooMany));
+    }
+
+}
@@ -0,0 +1,289 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static tablut.Utils.*;
+
+/** A fixed-size hash table of search results, indexed by position hash
+ *  keys (see Board.hash).  The table is a power-of-two number of buckets
+ *  of two entries each.  The first entry of a bucket is depth-preferred:
+ *  it is replaced only by results of at least the same depth or by results
+ *  from a later search.  The second is always replaced.  Entries live in
+ *  two parallel arrays of longs, one for keys and one for packed data
+ *  (laid out as described below), so the table allocates no per-entry
+ *  objects.
+ *
+ *  The table may be shared by several searching threads without locking.
+ *  Each key is stored XORed with its entry's data, so an entry whose two
+ *  words were written by different threads fails to match on probing and
+ *  reads as a miss.  The table writes nothing but entries, keeping no
+ *  shared counters that every probe would have to update; searches count
+ *  their own probes (see SearchStats).
+ *
+ *  A table may instead live in a file mapped into memory (see map), so
+ *  that it persists from one run to the next and is shared by all the
+ *  processes on a machine that map the same file.  The same checks make
+ *  this safe without locking, since each word is written atomically.
+ *  The file holds a HEADER_LONGS-long header (MAGIC, which includes the
+ *  format's version, and the current search generation) followed by the
+ *  entries, each a key and its data, in the machine's byte order.
+ *  @author ANUJS
+ */
+final class TranspositionTable {
+
+    /** Bound types.  An EXACT score is the value of the position.  A
+     *  LOWER (UPPER) score is a lower (upper) bound on it. */
+    static final int LOWER = 1, UPPER = 2, EXACT = 3;
+
+    /** Default table size in megabytes. */
+    static final int DEFAULT_MEGABYTES = 16;
+
+    /** Bytes used by one entry. */
+    static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+    /** A table using at most MEGABYTES megabytes (and at least one
+     *  bucket). */
+    TranspositionTable(int megabytes) {
+        int buckets = buckets(megabytes);
+        _keys = new long[2 * buckets];
+        _data = new long[2 * buckets];
+        _map = null;
+        _size = 2 * buckets;
+        _mask = buckets - 1;
+    }
+
+    /** A table kept in MAP, a view of a table file, with SIZE entries. */
+    private TranspositionTable(LongBuffer map, int size) {
+        _keys = _data = null;
+        _map = map;
+        _size = size;
+        _mask = size / 2 - 1;
+    }
+
+    /** Return the table in the file named FILE, which is mapped into
+     *  memory for reading and writing, first creating it with a table of
+     *  at most MEGABYTES megabytes if it does not exist or is empty.  An
+     *  existing table keeps its own size. */
+    static TranspositionTable map(String file, int megabytes)
+        throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            long length = out.length();
+            if (length == 0) {
+                length = HEADER_LONGS * Long.BYTES
+                    + 2L * buckets(megabytes) * ENTRY_BYTES;
+                out.setLength(length);
+            }
+            long entries = (length - HEADER_LONGS * Long.BYTES) / ENTRY_BYTES;
+            if (length > Integer.MAX_VALUE) {
+                throw error("hash file %s is too large to map", file);
+            }
+            if (entries < 2 || Long.bitCount(entries) != 1
+                || length != HEADER_LONGS * Long.BYTES
+                              + entries * ENTRY_BYTES) {
+                throw error("%s is not a hash file", file);
+            }
+            MappedByteBuffer bytes =
+                out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                                     length);
+            bytes.order(ByteOrder.nativeOrder());
+            LongBuffer map = bytes.asLongBuffer();
+            if (map.get(0) == 0) {
+                map.put(0, MAGIC);
+            } else if (map.get(0) != MAGIC) {
+                throw error("%s is not a hash file", file);
+            }
+            return new TranspositionTable(map, (int) entries);
+        }
+    }
+
+    /** Return the number of buckets in a table of at most MEGABYTES
+     *  megabytes (at least 1). */
+    private static int buckets(int megabytes) {
+        long entries = ((long) megabytes << 20) / ENTRY_BYTES;
+        return (int) Math.max(1,
+            Long.highestOneBit(Math.min(entries / 2, 1 << 29)));
+    }
+
+    /** Return true iff the table lives in a file (see map). */
+    boolean mapped() {
+        return _map != null;
+    }
+
+    /** Return the number of entries in the table. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the size of the table in megabytes, rounded down (but at
+     *  least 1). */
+    int megabytes() {
+        return (int) Math.max(1, ((long) size() * ENTRY_BYTES) >> 20);
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        if (_map == null) {
+            Arrays.fill(_keys, 0L);
+            Arrays.fill(_data, 0L);
+        } else {
+            for (int i = 0; i < HEADER_LONGS + 2 * _size; i += 1) {
+                _map.put(i, i == 0 ? MAGIC : 0L);
+            }
+        }
+        _generation = 0;
+    }
+
+    /** Note the start of a new search, so that entries from earlier
+     *  searches become preferred for replacement.  A mapped table counts
+     *  searches in its file, across all the processes that share it. */
+    void newSearch() {
+        if (_map == null) {
+            _generation = (_generation + 1) & GENERATION_MASK;
+        } else {
+            _generation = (int) (_map.get(1) + 1) & GENERATION_MASK;
+            _map.put(1, _generation);
+        }
+    }
+
+    /** Return the packed data stored for KEY, or 0 if there is none.
+     *  Use the static accessors below to unpack it. */
+    long probe(long key) {
+        int i = 2 * (int) (key & _mask);
+        for (int k = i; k < i + 2; k += 1) {
+            long data = data(k);
+            if (data != 0 && (key(k) ^ data) == key) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /** Record that the position with hash KEY, searched to DEPTH, has
+     *  SCORE, which is of bound type BOUND, and that its best move is the
+     *  packed move MOVE (0 if none). */
+    void store(long key, int depth, int bound, int score, int move) {
+        int i = 2 * (int) (key & _mask);
+        long data = pack(depth, bound, score, move, _generation);
+        long old = data(i);
+        boolean same = (key(i) ^ old) == key;
+        if (old == 0 || same || depth >= depth(old)
+            || generation(old) != _generation) {
+            if (same && move == 0) {
+                data |= (long) move(old) << MOVE_SHIFT;
+            }
+        } else {
+            i += 1;
+        }
+        if (_map == null) {
+            _keys[i] = key ^ data;
+            _data[i] = data;
+        } else {
+            _map.put(HEADER_LONGS + 2 * i, key ^ data);
+            _map.put(HEADER_LONGS + 2 * i + 1, data);
+        }
+    }
+
+    /** Return the stored key (XORed with the data) of entry I. */
+    private long key(int i) {
+        return _map == null ? _keys[i] : _map.get(HEADER_LONGS + 2 * i);
+    }
+
+    /** Return the data of entry I. */
+    private long data(int i) {
+        return _map == null ? _data[i] : _map.get(HEADER_LONGS + 2 * i + 1);
+    }
+
+    /** Return an estimate of the fraction of entries in use by the
+     *  current search, from a sample of the table. */
+    double fill() {
+        int n = Math.min(_size, FILL_SAMPLE), used = 0;
+        for (int i = 0; i < n; i += 1) {
+            long data = data(i);
+            if (data != 0 && generation(data) == _generation) {
+                used += 1;
+            }
+        }
+        return (double) used / n;
+    }
+
+    /** Return the search depth in packed entry DATA. */
+    static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /** Return the bound type in packed entry DATA. */
+    static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Return the score in packed entry DATA. */
+    static int score(long data) {
+        return (int) data;
+    }
+
+    /** Return the packed best move in packed entry DATA (0 if none). */
+    static int move(long data) {
+        return (int) (data >>> MOVE_SHIFT) & MOVE_MASK;
+    }
+
+    /** Return the search generation in packed entry DATA. */
+    private static int generation(long data) {
+        return (int) (data >>> GENERATION_SHIFT) & GENERATION_MASK;
+    }
+
+    /** Return entry data packing DEPTH, BOUND, SCORE, MOVE, and
+     *  GENERATION.  BOUND is never 0, so neither is the result. */
+    private static long pack(int depth, int bound, int score, int move,
+                             int generation) {
+        return (score & 0xffffffffL)
+            | ((long) move << MOVE_SHIFT)
+            | ((long) depth << DEPTH_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | ((long) generation << GENERATION_SHIFT);
+    }
+
+    /** Layout of entry data: the score in bits 0-31, the packed move in
+     *  bits 32-45, the depth in bits 46-53, the bound type in bits 54-55,
+     *  and the search generation in bits 56-63. */
+    private static final int
+        MOVE_SHIFT = 32, MOVE_MASK = (1 << 14) - 1,
+        DEPTH_SHIFT = 46, DEPTH_MASK = 0xff,
+        BOUND_SHIFT = 54, BOUND_MASK = 3,
+        GENERATION_SHIFT = 56, GENERATION_MASK = 0xff;
+
+    /** Number of entries sampled by fill. */
+    private static final int FILL_SAMPLE = 2000;
+
+    /** Version of the table file format, which covers the layout of entry
+     *  data above and the hash keys of Board.  It must change whenever
+     *  either does, so that files written with the old ones are
+     *  rejected. */
+    private static final int VERSION = 1;
+
+    /** The first word of a table file ("TBLTHSH" followed by a byte
+     *  holding VERSION). */
+    private static final long MAGIC = 0x54424c54485348_00L | VERSION;
+
+    /** Number of longs in a table file's header. */
+    private static final int HEADER_LONGS = 2;
+
+    /** Entry keys, each XORed with the entry's data, or null if the table
+     *  is mapped.  Entries 2k and 2k+1 form bucket k. */
+    private final long[] _keys;
+    /** Entry data, parallel to _keys.  0 marks an empty entry. */
+    private final long[] _data;
+    /** The contents of a mapped table's file, or null. */
+    private final LongBuffer _map;
+    /** Number of entries. */
+    private final int _size;
+    /** Mask selecting a bucket number from a key. */
+    private final int _mask;
+    /** The current search generation. */
+    private int _generation;
+}
@@ -0,0 +1,125 @@
+package tablut;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import static tablut.TranspositionTable.*;
+
+/** Tests of the TranspositionTable class.
+ *  @author ANUJS
+ */
+public class TranspositionTableTest {
+
+    /** Keys that all fall in the same bucket of a small table. */
+    private static final long K1 = 5, K2 = 5 + (1L << 40), K3 = 5 + (2L << 40);
+
+    /** Return the name of a new, empty temporary file. */
+    private String tempFile() throws IOException {
+        File file = File.createTempFile("tablut", ".hash");
+        file.deleteOnExit();
+        return file.getPath();
+    }
+
+    @Test
+    public void testStoreAndProbe() {
+        TranspositionTable table = new TranspositionTable(1);
+        assertEquals(0, table.probe(K1));
+        table.store(K1, 7, LOWER, -1234, Move.mv("a4-b").packed());
+        long data = table.probe(K1);
+        assertEquals(7, depth(data));
+        assertEquals(LOWER, bound(data));
+        assertEquals(-1234, score(data));
+        assertEquals(Move.mv("a4-b").packed(), move(data));
+        table.store(K1, 8, EXACT, 56, 0);
+        data = table.probe(K1);
+        assertEquals(8, depth(data));
+        assertEquals(EXACT, bound(data));
+        assertEquals(56, score(data));
+        assertEquals(Move.mv("a4-b").packed(), move(data));
+        assertTrue(table.probe(K1) != 0);
+        assertEquals(0, table.probe(K1 + 1));
+        table.clear();
+        assertEquals(0, table.probe(K1));
+    }
+
+    @Test
+    public void testMismatchedKey() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(K1, 3, EXACT, 10, 0);
+        assertEquals(0, table.probe(K1 ^ (1L << 50)));
+        assertEquals(0, table.probe(K2));
+        assertTrue(table.probe(K1) != 0);
+    }
+
+    @Test
+    public void testReplacement() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.newSearch();
+        table.store(K1, 5, EXACT, 1, 0);
+        table.store(K2, 3, EXACT, 2, 0);
+        assertEquals(1, score(table.probe(K1)));
+        assertEquals(2, score(table.probe(K2)));
+        table.store(K3, 2, EXACT, 3, 0);
+        assertEquals(1, score(table.probe(K1)));
+        assertEquals(0, table.probe(K2));
+        assertEquals(3, score(table.probe(K3)));
+        table.store(K2, 6, EXACT, 4, 0);
+        assertEquals(0, table.probe(K1));
+        assertEquals(4, score(table.probe(K2)));
+        assertEquals(3, score(table.probe(K3)));
+        table.newSearch();
+        table.store(K1, 1, EXACT, 5, 0);
+        assertEquals(5, score(table.probe(K1)));
+        assertEquals(0, table.probe(K2));
+        assertEquals(3, score(table.probe(K3)));
+    }
+
+    @Test
+    public void testMappedFile() throws IOException {
+        String file = tempFile();
+        TranspositionTable table = TranspositionTable.map(file, 1);
+        assertTrue(table.mapped());
+        table.newSearch();
+        table.store(K1, 5, EXACT, 1, 0);
+        table.store(K2, 3, UPPER, -2, 0);
+        TranspositionTable reopened = TranspositionTable.map(file, 4);
+        assertEquals(table.size(), reopened.size());
+        assertEquals(1, score(reopened.probe(K1)));
+        assertEquals(UPPER, bound(reopened.probe(K2)));
+        reopened.newSearch();
+        reopened.store(K3, 1, EXACT, 3, 0);
+        assertEquals(3, score(table.probe(K3)));
+        assertEquals(0, table.probe(K1));
+        assertEquals(-2, score(table.probe(K2)));
+    }
+
+    @Test
+    public void testBadFiles() throws IOException {
+        String file = tempFile();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(3 * ENTRY_BYTES);
+            out.writeLong(0x0101010101010101L);
+        }
+        try {
+            TranspositionTable.map(file, 1);
+            fail("accepted a file with a bad header");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+        file = tempFile();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(4 * ENTRY_BYTES);
+        }
+        try {
+            TranspositionTable.map(file, 1);
+            fail("accepted a file of a bad length");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+
+}
@@ -12,7 +12,11 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(UnitTest.class);
+        textui.runClasses(UnitTest.class, BoardTest.class,
+                          SolverTest.class, TablebaseTest.class,
+                          BookTest.class, MCTSTest.class,
+                          TranspositionTableTest.class, PerftTest.class,
+                          AITest.class);
     }
 
     /** A dummy test as a placeholder for real ones. */